@@ -0,0 +1,108 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.QMemberDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.repository.suppert.FastProjections;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * DB 없이 결과 row(Object[]) 를 DTO 로 채우는 비용만 측정 (1000 row 당)
+ *
+ * - projections*: Querydsl Projections (리플렉션)
+ * - fast*: FastProjections (LambdaMetafactory/MethodHandle)
+ * - queryProjection: @QueryProjection 으로 생성된 QMemberDto (생성자 직접 호출, 기준값)
+ */
+@State(Scope.Benchmark)
+public class DtoProjectionBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private Object[][] rows;
+
+    private FactoryExpression<MemberDto> projectionsBean;
+    private FactoryExpression<MemberDto> projectionsFields;
+    private FactoryExpression<MemberDto> projectionsConstructor;
+    private FactoryExpression<UserDto> projectionsAlias;
+    private FactoryExpression<MemberDto> fastBean;
+    private FactoryExpression<MemberDto> fastFields;
+    private FactoryExpression<MemberDto> fastConstructor;
+    private FactoryExpression<UserDto> fastAlias;
+    private FactoryExpression<MemberDto> queryProjection;
+
+    @Setup
+    public void setup() {
+        rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[]{"member" + i, i % 100};
+        }
+        projectionsBean = Projections.bean(MemberDto.class, member.username, member.age);
+        projectionsFields = Projections.fields(MemberDto.class, member.username, member.age);
+        projectionsConstructor = Projections.constructor(MemberDto.class, member.username, member.age);
+        projectionsAlias = Projections.fields(UserDto.class, member.username.as("name"), member.age);
+        fastBean = FastProjections.bean(MemberDto.class, member.username, member.age);
+        fastFields = FastProjections.fields(MemberDto.class, member.username, member.age);
+        fastConstructor = FastProjections.constructor(MemberDto.class, member.username, member.age);
+        fastAlias = FastProjections.fields(UserDto.class, member.username.as("name"), member.age);
+        queryProjection = new QMemberDto(member.username, member.age);
+    }
+
+    @Benchmark
+    public void projectionsBean(Blackhole bh) {
+        hydrate(projectionsBean, bh);
+    }
+
+    @Benchmark
+    public void projectionsFields(Blackhole bh) {
+        hydrate(projectionsFields, bh);
+    }
+
+    @Benchmark
+    public void projectionsConstructor(Blackhole bh) {
+        hydrate(projectionsConstructor, bh);
+    }
+
+    @Benchmark
+    public void projectionsAlias(Blackhole bh) {
+        hydrate(projectionsAlias, bh);
+    }
+
+    @Benchmark
+    public void fastBean(Blackhole bh) {
+        hydrate(fastBean, bh);
+    }
+
+    @Benchmark
+    public void fastFields(Blackhole bh) {
+        hydrate(fastFields, bh);
+    }
+
+    @Benchmark
+    public void fastConstructor(Blackhole bh) {
+        hydrate(fastConstructor, bh);
+    }
+
+    @Benchmark
+    public void fastAlias(Blackhole bh) {
+        hydrate(fastAlias, bh);
+    }
+
+    @Benchmark
+    public void queryProjection(Blackhole bh) {
+        hydrate(queryProjection, bh);
+    }
+
+    private void hydrate(FactoryExpression<?> projection, Blackhole bh) {
+        for (Object[] row : rows) {
+            bh.consume(projection.newInstance(row));
+        }
+    }
+}
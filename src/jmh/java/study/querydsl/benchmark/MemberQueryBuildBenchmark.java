@@ -0,0 +1,109 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * 요청마다 드는 쿼리 생성 비용 측정. MemberJpaRepository 의 실제 메서드를 호출한다.
+ *
+ * 테이블에는 회원 몇 명만 넣어두므로 실행/결과 매핑 비용은 작고 일정하다. 메서드끼리의 차이가 곧 쿼리를 만드는 방식의 차이
+ * - search: 조건 모양별로 캐시된 JPQL 에 파라미터만 바인딩 (MemberSearchQueryCache)
+ * - searchUncached: 캐시하지 않는 조건 (usernameContains 3글자 미만) 이라 매번 Querydsl 로 만들고 직렬화
+ * - searchByBuilder: BooleanBuilder 로 매번 만들고 직렬화
+ * - findByUsername*: JPQL 문자열 vs Querydsl
+ */
+@State(Scope.Benchmark)
+public class MemberQueryBuildBenchmark {
+
+    private static final int MEMBERS = 10;
+
+    private MemberSearchCondition condition;
+    private MemberSearchCondition uncachedCondition;
+
+    private ConfigurableApplicationContext context;
+    private MemberJpaRepository memberJpaRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(40);
+
+        uncachedCondition = new MemberSearchCondition();
+        uncachedCondition.setUsernameContains("r1");
+        uncachedCondition.setTeamName("teamA");
+        uncachedCondition.setAgeGoe(10);
+        uncachedCondition.setAgeLoe(40);
+
+        context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.profiles.active=jmh",
+                        "spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                        "decorator.datasource.p6spy.enable-logging=false",
+                        "member.index-check.enabled=false",
+                        "logging.level.org.hibernate.SQL=warn",
+                        "logging.level.org.hibernate.type=warn")
+                .run();
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+
+        EntityManager em = context.getBean(EntityManager.class);
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 0; i < MEMBERS; i++) {
+                em.persist(new Member("member" + i, 10 + i, teamA));
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> search() {
+        return memberJpaRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchUncached() {
+        return memberJpaRepository.search(uncachedCondition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameJpql() {
+        return memberJpaRepository.findByUsername("member1");
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameQuerydsl() {
+        return memberJpaRepository.findByUsername_Querydsl("member1");
+    }
+}
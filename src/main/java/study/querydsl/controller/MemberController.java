@@ -1,15 +1,38 @@
 package study.querydsl.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.dto.CountedPage;
+import study.querydsl.dto.MemberCursorPage;
+import study.querydsl.dto.MemberImportResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.CountMode;
+import study.querydsl.repository.MemberCsvImporter;
 import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberReadModel;
 import study.querydsl.repository.MemberRepository;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -20,6 +43,19 @@ public class MemberController {
 
     private final MemberRepository memberRepository;
 
+    private final MemberCsvImporter memberCsvImporter;
+
+    private final MemberReadModel memberReadModel;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${member.stream.fetch-size:500}")
+    private int streamFetchSize;
+
+    //Pageable 과 같은 최대 페이지 크기 (넘으면 잘라낸다)
+    @Value("${spring.data.web.pageable.max-page-size:2000}")
+    private int maxPageSize;
+
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition memberSearchCondition){
         return memberJpaRepository.search(memberSearchCondition);
@@ -27,13 +63,87 @@ public class MemberController {
     }
 
 
+    //v1 과 같은 결과를 한 줄에 하나씩(NDJSON) 흘려보낸다. 결과 건수와 상관없이 메모리 사용량이 일정함
+    @GetMapping(value = "/v1/members/stream", produces = "application/x-ndjson")
+    public void searchMemberV1Stream(MemberSearchCondition memberSearchCondition, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+        memberJpaRepository.searchStream(memberSearchCondition, streamFetchSize, dto -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(dto));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+
+
     @GetMapping("/v2/members")
     public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition memberSearchCondition, Pageable pageable){
         return memberRepository.searchPageSimple(memberSearchCondition,pageable);
     }
 
+    //countMode=ESTIMATED|NONE 이면 전체 건수를 세지 않는다. 응답의 totalExact 로 정확한 값인지 알 수 있다
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition memberSearchCondition, Pageable pageable){
-        return memberRepository.searchPageComplex(memberSearchCondition,pageable);
+    public CountedPage<MemberTeamDto> searchMemberV3(MemberSearchCondition memberSearchCondition, Pageable pageable,
+                                                     @RequestParam(defaultValue = "EXACT") CountMode countMode){
+        return memberRepository.searchPageComplex(memberSearchCondition,pageable,countMode);
+    }
+
+    //무한 스크롤: 전체 건수 없이 content 와 last(마지막 페이지 여부)만 준다
+    @GetMapping("/v5/members")
+    public Slice<MemberTeamDto> searchMemberV5(MemberSearchCondition memberSearchCondition, Pageable pageable){
+        return memberRepository.searchSlice(memberSearchCondition,pageable);
+    }
+
+    //member.read-model.enabled 이면 메모리 읽기 모델에서 (id 순서), 아직 읽어오기 전이면 v2 와 같이 DB 에서
+    @GetMapping("/v6/members")
+    public Page<MemberTeamDto> searchMemberV6(MemberSearchCondition memberSearchCondition, Pageable pageable){
+        if (memberReadModel.isReady()) {
+            return memberReadModel.searchPage(memberSearchCondition, pageable);
+        }
+        return memberRepository.searchPageSimple(memberSearchCondition, pageable);
+    }
+
+    //화면 하나에서 필요한 여러 검색을 한번에: 요청 본문의 조건 배열 순서대로 결과 배열을 돌려준다
+    @PostMapping("/v1/members/batch")
+    public List<List<MemberTeamDto>> searchMemberBatch(@RequestBody List<MemberSearchCondition> conditions){
+        try {
+            return memberRepository.searchBatch(conditions);
+        } catch (InvalidDataAccessApiUsageException e) { //리포지토리 프록시가 IllegalArgumentException 을 바꿔서 던진다
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/v4/members")
+    public MemberCursorPage searchMemberV4(MemberSearchCondition memberSearchCondition,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "20") int size){
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be positive");
+        }
+        size = Math.min(size, maxPageSize);
+        Long lastMemberId;
+        try {
+            lastMemberId = MemberCursorPage.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) { // NumberFormatException 포함
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor", e);
+        }
+        //다음 페이지 존재 여부를 알기 위해 하나 더 조회
+        List<MemberTeamDto> fetched = memberRepository.searchAfter(memberSearchCondition, lastMemberId, size + 1);
+        return MemberCursorPage.of(fetched, size);
+    }
+
+    //username,age,teamName 헤더가 있는 CSV 를 읽는 대로 배치 insert 한다 (curl --data-binary @members.csv -H 'Content-Type: text/csv')
+    @PostMapping(value = "/members/import", consumes = {"text/csv", "text/plain"})
+    public MemberImportResult importMembers(HttpServletRequest request) throws IOException {
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            return memberCsvImporter.importCsv(reader);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 }
@@ -0,0 +1,133 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberInsertDto;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberBatchInserter;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * 벤치마크용 대량 데이터 생성 (--spring.profiles.active=generate)
+ *
+ * 팀 크기는 Zipf 분포(앞쪽 팀일수록 회원이 많음), 나이는 오른쪽으로 꼬리가 긴 로그정규 분포로 만든다.
+ * 설정은 application-generate.yml 의 member.generator 참고
+ */
+@Slf4j
+@Profile("generate")
+@Component
+@RequiredArgsConstructor
+public class MemberDataGenerator {
+
+    private final GenerateMemberService generateMemberService;
+
+    @PostConstruct
+    public void generate(){
+        long start = System.nanoTime();
+        long[] teamIds = generateMemberService.createTeams();
+        long inserted = generateMemberService.createMembers(teamIds);
+        log.info("member generate done: teams={}, members={}, {}ms",
+                teamIds.length, inserted, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    //중첩 클래스는 바깥 클래스의 @Profile 을 물려받지 않으므로 따로 붙인다
+    @Profile("generate")
+    @Component
+    @RequiredArgsConstructor
+    static class GenerateMemberService{
+
+        @PersistenceContext
+        private EntityManager em;
+
+        private final MemberBatchInserter memberBatchInserter;
+
+        @Value("${member.generator.teams:100}")
+        private int teamCount;
+        @Value("${member.generator.members:1000000}")
+        private long memberCount;
+        @Value("${member.generator.zipf-exponent:1.1}")
+        private double zipfExponent;
+        @Value("${member.generator.chunk-size:10000}")
+        private int chunkSize;
+        @Value("${member.generator.seed:42}")
+        private long seed;
+
+        //chunk 단위로 각각 커밋하므로 여기에는 트랜잭션을 걸지 않는다
+        public long createMembers(long[] teamIds){
+            Random random = new Random(seed);
+            double[] cumulative = zipfCumulative(teamIds.length, zipfExponent);
+            long onePercent = Math.max(1, memberCount / 100);
+
+            return memberBatchInserter.insert(new Iterator<MemberInsertDto>() {
+                private long next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < memberCount;
+                }
+
+                @Override
+                public MemberInsertDto next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long teamId = teamIds[sampleTeam(cumulative, random.nextDouble())];
+                    return new MemberInsertDto("member" + next++, sampleAge(random), teamId);
+                }
+            }, chunkSize, done -> {
+                if (done % onePercent < chunkSize) {
+                    log.info("member generate {}/{} ({}%)", done, memberCount, done * 100 / memberCount);
+                }
+            });
+        }
+
+        @Transactional
+        public long[] createTeams(){
+            long[] teamIds = new long[teamCount];
+            for (int i = 0; i < teamCount; i++) {
+                Team team = new Team("team" + i);
+                em.persist(team);
+                teamIds[i] = team.getId();
+            }
+            return teamIds;
+        }
+
+        //rank k 의 가중치 1/k^s 의 누적합을 0~1 로 정규화
+        private static double[] zipfCumulative(int n, double exponent) {
+            double[] cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1.0 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+            return cumulative;
+        }
+
+        private static int sampleTeam(double[] cumulative, double u) {
+            int index = Arrays.binarySearch(cumulative, u);
+            index = index >= 0 ? index : -index - 1;
+            return Math.min(index, cumulative.length - 1);
+        }
+
+        //중앙값 32세, 0~99세
+        private static int sampleAge(Random random) {
+            double age = Math.exp(Math.log(32) + 0.35 * random.nextGaussian());
+            return (int) Math.min(99, Math.max(0, Math.round(age)));
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package study.querydsl.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import study.querydsl.repository.suppert.SearchPermit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 검색(/v1 ~ /v3) 동시 실행 수를 커넥션 풀 크기로 제한하는 벌크헤드
+ *
+ * 허용 수를 넘는 요청은 maxWait 동안 순서대로(fair) 기다리고, 그래도 자리가 없으면 503 + Retry-After 로 바로 돌려보낸다.
+ * 느린 클라이언트가 몰려도 커넥션 풀 대기(connection-timeout)까지 가지 않고, 나머지 요청(/actuator 등)은 계속 처리된다.
+ * 받은 자리는 {@link SearchPermit} 으로 요청에 걸어두고, 같은 검색의 결과를 기다리는 요청은 기다리는 동안 자리를 돌려준다.
+ *
+ * <ul>
+ *     <li>member.bulkhead.active: 지금 실행 중인 요청 수</li>
+ *     <li>member.bulkhead.wait: 자리가 날 때까지 기다린 시간</li>
+ *     <li>member.bulkhead.rejected: 503 으로 돌려보낸 요청 수</li>
+ * </ul>
+ */
+public class MemberSearchBulkhead extends OncePerRequestFilter {
+
+    private final int permits;
+    private final Semaphore semaphore;
+    private final Duration maxWait;
+    private final long maxWaitNanos;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public MemberSearchBulkhead(int permits, Duration maxWait, MeterRegistry registry) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive: " + permits);
+        }
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true);
+        this.maxWait = maxWait;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.waitTimer = Timer.builder("member.bulkhead.wait").register(registry);
+        this.rejected = Counter.builder("member.bulkhead.rejected").register(registry);
+        Gauge.builder("member.bulkhead.active", this, MemberSearchBulkhead::getActive).register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            reject(response);
+            return;
+        }
+        SearchPermit permit = SearchPermit.bind(semaphore, maxWait);
+        try {
+            filterChain.doFilter(request, response);
+        } catch (ServletException | RuntimeException e) {
+            //돌려준 자리를 다시 받지 못한 경우
+            if (!isRejected(e) || response.isCommitted()) {
+                throw e;
+            }
+            reject(response);
+        } finally {
+            permit.release();
+            SearchPermit.clear();
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        rejected.increment();
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "too many concurrent member searches");
+    }
+
+    private static boolean isRejected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SearchPermit.Rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getActive() {
+        return permits - semaphore.availablePermits();
+    }
+}
@@ -0,0 +1,71 @@
+package study.querydsl.controller;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import study.querydsl.repository.suppert.ClientWriteMarker;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * replica 를 쓸 때 클라이언트가 방금 쓴 데이터를 바로 읽을 수 있게 한다 (member.datasource.replica.enabled)
+ *
+ * 쓰기를 커밋한 시각을 쿠키로 돌려주고, 다음 요청에서 그 쿠키를 {@link ClientWriteMarker} 로 넘긴다.
+ * 쿠키는 max-lag 동안만 유지되므로 그 뒤의 요청은 쿠키 없이 replica 로 간다.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "member-last-write";
+
+    private final int cookieMaxAgeSeconds;
+
+    public ReadYourWritesFilter(Duration maxLag) {
+        //쿠키 만료는 초 단위이므로 올림
+        this.cookieMaxAgeSeconds = (int) Math.max(1, (maxLag.toMillis() + 999) / 1000);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ClientWriteMarker.bind(lastWriteOf(request), written -> {
+            //트랜잭션은 보통 응답 본문을 쓰기 전에 끝나지만, 이미 응답을 보내기 시작했으면 쿠키를 붙일 수 없다
+            if (!response.isCommitted()) {
+                response.addCookie(cookie(written));
+            }
+        });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ClientWriteMarker.clear();
+        }
+    }
+
+    private Cookie cookie(long written) {
+        Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(written));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(cookieMaxAgeSeconds);
+        return cookie;
+    }
+
+    private static long lastWriteOf(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
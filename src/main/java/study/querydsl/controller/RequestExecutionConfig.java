@@ -0,0 +1,72 @@
+package study.querydsl.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 요청 실행 설정
+ *
+ * - 회원 검색(/v1 ~ /v3)은 {@link MemberSearchBulkhead} 로 동시 실행 수를 커넥션 풀 크기로 제한한다.
+ * - replica 를 쓰면 {@link ReadYourWritesFilter} 로 클라이언트별 마지막 쓰기 시각을 쿠키로 주고받는다.
+ * - member.virtual-threads.enabled=true 이고 Java 21 이상에서 실행하면 Tomcat 요청 스레드를 가상 스레드로 바꾼다.
+ *   JDBC 를 기다리는 동안 플랫폼 스레드를 잡고 있지 않으므로 느린 클라이언트가 많아도 스레드 풀이 바닥나지 않는다.
+ *   빌드 타겟은 Java 11 그대로이므로 리플렉션으로 만들고, 그보다 낮은 버전이면 경고만 남기고 기존 스레드 풀을 쓴다.
+ */
+@Slf4j
+@Configuration
+public class RequestExecutionConfig {
+
+    //검색 API 만 (/members/import, /teams/stats, /actuator 는 제외)
+    @Bean
+    public FilterRegistrationBean<MemberSearchBulkhead> memberSearchBulkhead(
+            @Value("${member.bulkhead.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${member.bulkhead.max-wait:500ms}") Duration maxWait,
+            MeterRegistry registry) {
+        FilterRegistrationBean<MemberSearchBulkhead> registration =
+                new FilterRegistrationBean<>(new MemberSearchBulkhead(permits, maxWait, registry));
+        registration.setName("memberSearchBulkhead");
+        registration.addUrlPatterns("/v1/*", "/v2/*", "/v3/*");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "member.datasource.replica.enabled", havingValue = "true")
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${member.datasource.replica.max-lag:1s}") Duration maxLag) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(maxLag));
+        registration.setName("readYourWritesFilter");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "member.virtual-threads.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> {
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+                log.info("tomcat requests run on virtual threads");
+            }
+        };
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) { // 19, 20 은 --enable-preview 없이 UnsupportedOperationException
+            log.warn("member.virtual-threads.enabled needs Java 21+ (running {}), keeping platform request threads",
+                    Runtime.version(), e);
+            return null;
+        }
+    }
+}
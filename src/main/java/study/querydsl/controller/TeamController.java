@@ -0,0 +1,22 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.TeamStats;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStats teamStats;
+
+    //팀별 회원 수/나이 통계. 회원 테이블을 group by 하지 않고 메모리에 유지하는 값을 준다
+    @GetMapping("/teams/stats")
+    public List<TeamStatsDto> teamStats(){
+        return teamStats.snapshot();
+    }
+}
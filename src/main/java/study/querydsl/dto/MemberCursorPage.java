@@ -0,0 +1,44 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+@Data
+public class MemberCursorPage {
+
+    private List<MemberTeamDto> content;
+    private String nextCursor; // 다음 페이지 요청시 그대로 넘겨주면 된다. 마지막 페이지면 null
+    private boolean hasNext;
+
+    public MemberCursorPage(List<MemberTeamDto> content, String nextCursor, boolean hasNext) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * size+1 개를 조회한 결과로 다음 페이지 존재 여부와 커서를 만든다.
+     */
+    public static MemberCursorPage of(List<MemberTeamDto> fetched, int size) {
+        boolean hasNext = fetched.size() > size;
+        List<MemberTeamDto> content = hasNext ? fetched.subList(0, size) : fetched;
+        String nextCursor = hasNext ? encodeCursor(content.get(content.size() - 1).getMemberId()) : null;
+        return new MemberCursorPage(content, nextCursor, hasNext);
+    }
+
+    public static String encodeCursor(Long lastMemberId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(lastMemberId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        return Long.valueOf(decoded);
+    }
+}
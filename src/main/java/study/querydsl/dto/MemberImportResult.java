@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberImportResult {
+
+    private long imported;
+    private int createdTeams; // csv 에만 있고 DB 에 없어서 새로 만든 팀 수
+    private long elapsedMillis;
+
+    public MemberImportResult(long imported, int createdTeams, long elapsedMillis) {
+        this.imported = imported;
+        this.createdTeams = createdTeams;
+        this.elapsedMillis = elapsedMillis;
+    }
+}
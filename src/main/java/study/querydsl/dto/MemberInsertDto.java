@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberInsertDto {
+
+    private String username;
+    private int age;
+    private Long teamId; // 팀이 없으면 null
+
+    public MemberInsertDto(String username, int age, Long teamId) {
+        this.username = username;
+        this.age = age;
+        this.teamId = teamId;
+    }
+}
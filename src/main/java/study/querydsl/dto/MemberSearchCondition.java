@@ -8,6 +8,8 @@ public class MemberSearchCondition {
     //회원명,팀명,나이(ageGoe,ageLoe)
 
     private String username;
+    private String usernameStartsWith; // 대소문자 구분 없이 앞부분 일치 (자동완성)
+    private String usernameContains; // 대소문자 구분 없이 부분 일치 (3글자 이상이면 trigram 인덱스)
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
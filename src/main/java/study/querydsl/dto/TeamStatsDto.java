@@ -0,0 +1,25 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class TeamStatsDto {
+
+    private Long teamId;
+    private String teamName;
+    private long count;
+    private long sumAge;
+    private Double avgAge; // 회원이 없으면 null
+    private Integer minAge;
+    private Integer maxAge;
+
+    public TeamStatsDto(Long teamId, String teamName, long count, long sumAge, Integer minAge, Integer maxAge) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.count = count;
+        this.sumAge = sumAge;
+        this.avgAge = count > 0 ? (double) sumAge / count : null;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+    }
+}
@@ -6,32 +6,68 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 import javax.persistence.*;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
 
 @Entity
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of={"id","username","age"})
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_team_age", columnList = "team_id, age"),
+        //나이 범위 검색은 이 인덱스만 읽고 끝난다 (member_id 는 h2 보조 인덱스에 항상 포함됨)
+        @Index(name = "idx_member_age_team_username", columnList = "age, team_id, username"),
+        //usernameStartsWith: 소문자로 맞춘 값에 like 'abc%' 로 범위 검색
+        @Index(name = "idx_member_username_key", columnList = "username_key")
+})
 public class Member {
 
-    @Id @GeneratedValue
+    public static final int TRIGRAM_LENGTH = 3;
+
+    //시퀀스를 50개씩 미리 받아와서(pooled) 대량 저장시 insert 마다 시퀀스를 조회하지 않는다
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     @Column(name="member_id")
 
     private Long id;
     private String username;
     private int age;
 
+    //username 을 NFKC + 소문자로 맞춘 값. 대소문자 구분 없는 검색에 쓴다
+    @Column(name = "username_key")
+    private String usernameKey;
+
+    /**
+     * usernameKey 의 3글자 조각들. usernameContains 는 검색어의 조각을 모두 가진 회원만 (trigram, member_id) 인덱스로 찾는다.
+     * username 은 생성할 때만 정해지므로 insert 때만 같이 저장된다.
+     * 삭제는 외래키 on delete cascade 로 DB 가 지운다 (Member 벌크 delete 쿼리도 그대로 쓸 수 있게)
+     */
+    @ElementCollection
+    @CollectionTable(name = "member_username_trigram",
+            joinColumns = @JoinColumn(name = "member_id"),
+            foreignKey = @ForeignKey(name = "fk_member_username_trigram_member",
+                    foreignKeyDefinition = "foreign key (member_id) references member (member_id) on delete cascade"),
+            indexes = @Index(name = "idx_member_username_trigram", columnList = "trigram, member_id"))
+    @Column(name = "trigram", length = TRIGRAM_LENGTH)
+    private Set<String> usernameTrigrams = new LinkedHashSet<>();
+
     @ManyToOne(fetch=FetchType.LAZY)
     @JoinColumn(name="team_id")
     private Team team;
 
 
     public Member(String username, int age) {
-        this.username = username;
+        changeUsername(username);
         this.age = age;
     }
 
     public Member(String username, int age, Team team) {
-        this.username = username;
+        changeUsername(username);
         this.age = age;
         if(team!=null){
             changeTeam(team);
@@ -39,7 +75,33 @@ public class Member {
     }
 
     public Member(String username) {
-        this.username=username;
+        changeUsername(username);
+    }
+
+    private void changeUsername(String username) {
+        this.username = username;
+        this.usernameKey = usernameKeyOf(username);
+        this.usernameTrigrams.clear();
+        this.usernameTrigrams.addAll(trigramsOf(usernameKey));
+    }
+
+    /**
+     * 검색어도 저장할 때와 같은 기준으로 맞춰야 한다 (전각/반각, 대소문자 무시)
+     */
+    public static String usernameKeyOf(String username) {
+        return username == null ? null : Normalizer.normalize(username, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    //3글자보다 짧으면 조각이 없다
+    public static Set<String> trigramsOf(String usernameKey) {
+        if (usernameKey == null || usernameKey.length() < TRIGRAM_LENGTH) {
+            return Collections.emptySet();
+        }
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + TRIGRAM_LENGTH <= usernameKey.length(); i++) {
+            trigrams.add(usernameKey.substring(i, i + TRIGRAM_LENGTH));
+        }
+        return trigrams;
     }
 
     public void changeTeam(Team team) {
@@ -0,0 +1,23 @@
+package study.querydsl.repository;
+
+/**
+ * 페이징 조회에서 전체 건수(totalElements)를 어떻게 구할지
+ */
+public enum CountMode {
+
+    /**
+     * count 쿼리로 정확하게 센다 (같은 조건은 MemberCountCache 에 잠시 캐시)
+     */
+    EXACT,
+
+    /**
+     * TeamStats 의 팀별/나이별 인원수로 계산한다. DB 를 읽지 않고 커밋된 변경까지만 반영된다.
+     * username 조건이 있으면 인덱스로 정확히 세는 비용이 작으므로 EXACT 와 같다
+     */
+    ESTIMATED,
+
+    /**
+     * 세지 않는다. 한 건 더 조회해서 다음 페이지가 있는지만 알고, totalElements 는 그때까지 확인된 최소 건수다
+     */
+    NONE
+}
@@ -0,0 +1,64 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberInsertDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * 회원 대량 저장
+ *
+ * chunkSize 건씩 끊어서 트랜잭션을 커밋하고, 매 chunk 마다 flush/clear 해서 영속성 컨텍스트가 커지지 않게 한다.
+ * hibernate.jdbc.batch_size, order_inserts 설정과 같이 쓰면 insert 가 JDBC 배치로 나간다.
+ * rows 는 필요할 때 하나씩 꺼내므로 전체 데이터를 메모리에 올리지 않아도 된다.
+ *
+ * 회원 한명마다 member_username_trigram 에 (username 길이 - 2) 행 정도가 같이 insert 된다 ({@link Member#getUsernameTrigrams()}).
+ * chunk 하나가 실제로 쓰는 행 수와 flush 시간은 chunkSize x 그만큼이므로 chunkSize 를 정할 때 감안한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberBatchInserter {
+
+    private final EntityManager em;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * @param progress chunk 가 커밋될 때마다 지금까지 저장한 건수를 받는다
+     * @return 저장한 건수
+     */
+    public long insert(Iterator<MemberInsertDto> rows, int chunkSize, LongConsumer progress) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long inserted = 0;
+        while (rows.hasNext()) {
+            Integer chunk = transactionTemplate.execute(status -> insertChunk(rows, chunkSize));
+            inserted += chunk;
+            progress.accept(inserted);
+        }
+        return inserted;
+    }
+
+    private int insertChunk(Iterator<MemberInsertDto> rows, int chunkSize) {
+        //clear 이후에는 이전 chunk 의 Team 이 준영속이므로 chunk 마다 새로 참조를 얻는다
+        Map<Long, Team> teams = new HashMap<>();
+        int count = 0;
+        while (count < chunkSize && rows.hasNext()) {
+            MemberInsertDto row = rows.next();
+            Team team = row.getTeamId() == null ? null
+                    : teams.computeIfAbsent(row.getTeamId(), teamId -> em.getReference(Team.class, teamId));
+            em.persist(new Member(row.getUsername(), row.getAge(), team));
+            count++;
+        }
+        em.flush();
+        em.clear();
+        return count;
+    }
+}
@@ -0,0 +1,183 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 회원 벌크 수정/삭제
+ *
+ * 조건에 맞는 회원을 id 순서로 chunkSize 개씩 끊어서 (where id > 마지막 id ... limit) 그 id 들만 update/delete 하고
+ * chunk 마다 트랜잭션을 커밋한다. 한번에 잡는 락이 chunk 크기로 제한되므로 테이블 크기와 상관없이 락 시간이 일정하다.
+ * (바깥에 트랜잭션이 있으면 그 트랜잭션에 참여하므로 chunk 별로 커밋되지 않는다)
+ *
+ * 벌크 연산은 영속성 컨텍스트를 거치지 않으므로, 이미 로딩된 회원 중 바뀐 것은 refresh 하고 지워진 것은 detach 한다.
+ * refresh 는 메모리에서 고친 값을 DB 값으로 덮어쓰므로 chunk 마다 먼저 flush 해서 아직 반영하지 않은 변경을 DB 에 내보낸다
+ * (flush 모드가 COMMIT 이어도 잃지 않는다).
+ * 엔티티 이벤트도 없으므로 끝나면 {@link TeamStats} 와 {@link MemberReadModel} 을 다시 계산한다.
+ */
+@Component
+public class MemberBulkOperations {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final TeamStats teamStats;
+    private final MemberReadModel readModel;
+    private final int chunkSize;
+
+    public MemberBulkOperations(EntityManager em, PlatformTransactionManager transactionManager, TeamStats teamStats, MemberReadModel readModel,
+                                @Value("${member.bulk.chunk-size:1000}") int chunkSize) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.teamStats = teamStats;
+        this.readModel = readModel;
+        this.chunkSize = chunkSize;
+    }
+
+    public long bulkAgeAdd(MemberSearchCondition condition, int delta) {
+        return bulkAgeAdd(condition, delta, processed -> { });
+    }
+
+    /**
+     * @param progress chunk 가 끝날 때마다 지금까지 수정한 건수를 받는다
+     * @return 수정한 건수
+     */
+    public long bulkAgeAdd(MemberSearchCondition condition, int delta, LongConsumer progress) {
+        return inChunks(condition, progress, ids -> {
+            long updated = queryFactory
+                    .update(member)
+                    .set(member.age, member.age.add(delta))
+                    .where(member.id.in(ids), conditionOf(condition))
+                    .execute();
+            syncPersistenceContext(ids, false);
+            return updated;
+        });
+    }
+
+    public long bulkDelete(MemberSearchCondition condition) {
+        return bulkDelete(condition, processed -> { });
+    }
+
+    /**
+     * @param progress chunk 가 끝날 때마다 지금까지 삭제한 건수를 받는다
+     * @return 삭제한 건수
+     */
+    public long bulkDelete(MemberSearchCondition condition, LongConsumer progress) {
+        return inChunks(condition, progress, ids -> {
+            long deleted = queryFactory
+                    .delete(member)
+                    .where(member.id.in(ids), conditionOf(condition))
+                    .execute();
+            syncPersistenceContext(ids, true);
+            return deleted;
+        });
+    }
+
+    private long inChunks(MemberSearchCondition condition, LongConsumer progress, ToLongFunction<List<Long>> operation) {
+        try {
+            return runChunks(condition, progress, operation);
+        } finally {
+            //중간에 실패해도 이미 커밋된 chunk 가 있으므로 다시 계산한다
+            teamStats.rebuildAfterCommit();
+            readModel.rebuildAfterCommit();
+        }
+    }
+
+    private long runChunks(MemberSearchCondition condition, LongConsumer progress, ToLongFunction<List<Long>> operation) {
+        long processed = 0;
+        //[chunk 처리 건수, chunk 의 마지막 id]
+        long[] chunkResult = new long[2];
+        Long lastId = null;
+        while (true) {
+            Long after = lastId;
+            boolean done = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                em.flush();
+                List<Long> ids = nextChunk(condition, after);
+                if (ids.isEmpty()) {
+                    return true;
+                }
+                chunkResult[0] = operation.applyAsLong(ids);
+                chunkResult[1] = ids.get(ids.size() - 1);
+                return false;
+            }));
+            if (done) {
+                return processed;
+            }
+            processed += chunkResult[0];
+            progress.accept(processed);
+            lastId = chunkResult[1];
+        }
+    }
+
+    private List<Long> nextChunk(MemberSearchCondition condition, Long lastId) {
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(conditionOf(condition), lastId != null ? member.id.gt(lastId) : null)
+                .orderBy(member.id.asc())
+                .limit(chunkSize)
+                .fetch();
+    }
+
+    /**
+     * update/delete 에서는 조인을 쓸 수 없으므로 팀 이름은 서브쿼리로 거른다
+     */
+    private Predicate conditionOf(MemberSearchCondition condition) {
+        return ExpressionUtils.allOf(
+                usernameEq(condition.getUsername()),
+                UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                UsernameSearch.contains(condition.getUsernameContains()),
+                TeamSearch.nameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()));
+    }
+
+    private void syncPersistenceContext(List<Long> ids, boolean deleted) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+        for (Long id : ids) {
+            Object entity = persistenceContext.getEntity(session.generateEntityKey(id, persister));
+            if (entity == null) {
+                continue;
+            }
+            if (deleted) {
+                em.detach(entity);
+            } else {
+                em.refresh(entity);
+            }
+        }
+    }
+
+    private BooleanExpression usernameEq(String username) {
+        return hasText(username) ? member.username.eq(username) : null;
+    }
+
+    private BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    private BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
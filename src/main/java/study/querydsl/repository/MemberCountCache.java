@@ -0,0 +1,88 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 페이징 검색의 카운트 결과 캐시
+ *
+ * 검색조건(MemberSearchCondition)을 정규화한 값({@link MemberSearchKey})을 키로 total 을 보관한다.
+ * 크기 제한(LRU) 과 TTL 을 두고, 데이터 변경(엔티티 저장, 벌크 execute)이 일어나면
+ * {@link MemberCountCacheInvalidator} 가 전체를 비운다.
+ */
+@Component
+public class MemberCountCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<MemberSearchKey, CachedCount> entries;
+
+    //invalidateAll 이 일어나는 동안 계산된 카운트가 다시 들어가지 않도록 세대를 비교한다
+    private long generation;
+
+    public MemberCountCache(@Value("${member.count-cache.max-size:1000}") int maxSize,
+                            @Value("${member.count-cache.ttl:30s}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemberSearchKey, CachedCount> eldest) {
+                return size() > MemberCountCache.this.maxSize;
+            }
+        };
+    }
+
+    public long get(MemberSearchCondition condition, LongSupplier countQuery) {
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        long startGeneration;
+        synchronized (this) {
+            CachedCount entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdAt < ttlNanos) {
+                return entry.total;
+            }
+            startGeneration = generation;
+        }
+
+        //카운트 쿼리는 락 밖에서 실행
+        long total = countQuery.getAsLong();
+
+        synchronized (this) {
+            if (startGeneration == generation) {
+                entries.put(key, new CachedCount(total, System.nanoTime()));
+            }
+        }
+        return total;
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * 데이터 변경(invalidateAll)마다 커진다. 변경 전에 시작한 조회인지 구분하는 데 쓴다
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class CachedCount {
+        private final long total;
+        private final long createdAt;
+
+        private CachedCount(long total, long createdAt) {
+            this.total = total;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * Hibernate 가 실행하는 모든 SQL 을 보고 insert/update/delete 가 나가면 카운트 캐시를 비운다.
+ * em.persist 로 저장하는 경우와 Querydsl 벌크 execute() 모두 여기를 지나간다.
+ *
+ * 트랜잭션 안이라면 커밋/롤백 시점에 한번 더 비워서
+ * 커밋 전 데이터로 계산된 카운트나 롤백된 데이터의 카운트가 남지 않게 한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberCountCacheInvalidator implements StatementInspector, HibernatePropertiesCustomizer {
+
+    //StatementInspector 가 Serializable 이라서 붙인다 (직렬화해서 쓰지는 않는다)
+    private static final long serialVersionUID = 1L;
+
+    private final MemberCountCache countCache;
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (isDataChange(sql)) {
+            countCache.invalidateAll();
+            invalidateAfterCompletion();
+        }
+        return sql;
+    }
+
+    private void invalidateAfterCompletion() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MemberCountCacheInvalidator.this);
+                countCache.invalidateAll();
+            }
+        });
+    }
+
+    static boolean isDataChange(String sql) {
+        int i = 0;
+        //use_sql_comments 를 켜두면 /* insert study.querydsl.entity.Member */ 같은 주석이 앞에 붙는다
+        while (true) {
+            while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            }
+            if (!sql.startsWith("/*", i)) {
+                break;
+            }
+            int end = sql.indexOf("*/", i + 2);
+            if (end < 0) {
+                return false;
+            }
+            i = end + 2;
+        }
+        return startsWithKeyword(sql, i, "insert")
+                || startsWithKeyword(sql, i, "update")
+                || startsWithKeyword(sql, i, "delete")
+                || startsWithKeyword(sql, i, "merge");
+    }
+
+    private static boolean startsWithKeyword(String sql, int offset, String keyword) {
+        return sql.regionMatches(true, offset, keyword, 0, keyword.length());
+    }
+}
@@ -0,0 +1,216 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberImportResult;
+import study.querydsl.dto.MemberInsertDto;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 회원 CSV 가져오기
+ *
+ * 첫 줄은 헤더(username,age,teamName, 순서 무관)이고, 한 줄씩 읽으면서 바로 {@link MemberBatchInserter} 로 넘기므로
+ * 파일 크기와 상관없이 메모리 사용량이 일정하다. 값에 쉼표나 따옴표가 있으면 "..." 로 감싸고 따옴표는 "" 로 쓴다.
+ *
+ * 팀 이름은 한번 찾은 것은 기억해두고, 처음 보는 이름은 TeamRepository.findIdsByName(쿼리 캐시)으로 찾는다.
+ * DB 에 없는 팀은 새로 만든다. 잘못된 줄이 있으면 IllegalArgumentException 으로 멈추며, 그 전 chunk 까지는 이미 커밋되어 있다.
+ */
+@Slf4j
+@Component
+public class MemberCsvImporter {
+
+    private static final String USERNAME = "username";
+    private static final String AGE = "age";
+    private static final String TEAM_NAME = "teamname";
+
+    private final EntityManager em;
+    private final TeamRepository teamRepository;
+    private final MemberBatchInserter memberBatchInserter;
+    private final int chunkSize;
+
+    public MemberCsvImporter(EntityManager em, TeamRepository teamRepository, MemberBatchInserter memberBatchInserter,
+                             @Value("${member.import.chunk-size:5000}") int chunkSize) {
+        this.em = em;
+        this.teamRepository = teamRepository;
+        this.memberBatchInserter = memberBatchInserter;
+        this.chunkSize = chunkSize;
+    }
+
+    public MemberImportResult importCsv(Reader reader) {
+        long start = System.nanoTime();
+        CsvRows rows = new CsvRows(new BufferedReader(reader));
+        long imported = memberBatchInserter.insert(rows, chunkSize,
+                done -> log.debug("member import {} rows", done));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("member import done: members={}, createdTeams={}, {}ms", imported, rows.createdTeams, elapsedMillis);
+        return new MemberImportResult(imported, rows.createdTeams, elapsedMillis);
+    }
+
+    /**
+     * 한 줄씩 읽어서 MemberInsertDto 로 바꾼다. next() 는 MemberBatchInserter 의 chunk 트랜잭션 안에서 불린다.
+     */
+    private class CsvRows implements Iterator<MemberInsertDto> {
+
+        private final BufferedReader reader;
+        private final Map<String, Long> teamIds = new HashMap<>();
+        private final int usernameIndex;
+        private final int ageIndex;
+        private final int teamNameIndex;
+        private String nextLine;
+        private long lineNumber;
+        private int createdTeams;
+
+        private CsvRows(BufferedReader reader) {
+            this.reader = reader;
+            String header = readLine();
+            if (header == null) {
+                throw new IllegalArgumentException("empty csv");
+            }
+            if (header.startsWith("\uFEFF")) { // 엑셀에서 저장한 UTF-8 BOM
+                header = header.substring(1);
+            }
+            List<String> columns = new ArrayList<>();
+            for (String column : parseLine(header)) {
+                columns.add(column.trim().toLowerCase(Locale.ROOT));
+            }
+            usernameIndex = requiredColumn(columns, USERNAME);
+            ageIndex = requiredColumn(columns, AGE);
+            teamNameIndex = columns.indexOf(TEAM_NAME);
+            nextLine = readNonBlankLine();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        @Override
+        public MemberInsertDto next() {
+            if (nextLine == null) {
+                throw new NoSuchElementException();
+            }
+            List<String> values = parseLine(nextLine);
+            MemberInsertDto row = toRow(values);
+            nextLine = readNonBlankLine();
+            return row;
+        }
+
+        private MemberInsertDto toRow(List<String> values) {
+            String username = valueAt(values, usernameIndex);
+            if (!hasText(username)) {
+                throw invalid("username is empty");
+            }
+            int age;
+            try {
+                age = Integer.parseInt(valueAt(values, ageIndex).trim());
+            } catch (NumberFormatException e) {
+                throw invalid("age is not a number");
+            }
+            String teamName = teamNameIndex >= 0 ? valueAt(values, teamNameIndex) : null;
+            return new MemberInsertDto(username, age, hasText(teamName) ? teamIdOf(teamName) : null);
+        }
+
+        private Long teamIdOf(String teamName) {
+            Long teamId = teamIds.get(teamName);
+            if (teamId == null) {
+                //이름이 같은 팀이 여러개면 먼저 만든 팀
+                List<Long> found = teamRepository.findIdsByName(teamName);
+                teamId = found.isEmpty() ? createTeam(teamName) : Collections.min(found);
+                teamIds.put(teamName, teamId);
+            }
+            return teamId;
+        }
+
+        private Long createTeam(String teamName) {
+            Team team = new Team(teamName);
+            em.persist(team);
+            createdTeams++;
+            return team.getId();
+        }
+
+        private String valueAt(List<String> values, int index) {
+            if (index >= values.size()) {
+                throw invalid("expected at least " + (index + 1) + " columns");
+            }
+            return values.get(index);
+        }
+
+        private int requiredColumn(List<String> columns, String name) {
+            int index = columns.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("csv header must contain " + name);
+            }
+            return index;
+        }
+
+        private IllegalArgumentException invalid(String message) {
+            return new IllegalArgumentException("line " + lineNumber + ": " + message);
+        }
+
+        private String readNonBlankLine() {
+            String line;
+            do {
+                line = readLine();
+            } while (line != null && line.trim().isEmpty());
+            return line;
+        }
+
+        private String readLine() {
+            try {
+                String line = reader.readLine();
+                lineNumber++;
+                return line;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<String> parseLine(String line) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) {
+                throw invalid("unclosed quote");
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
@@ -4,18 +4,23 @@ import antlr.StringUtils;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
-import study.querydsl.entity.QTeam;
+import study.querydsl.repository.suppert.ReadOnlyQuery;
 
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 import static org.springframework.util.StringUtils.hasText;
@@ -25,11 +30,14 @@ import static study.querydsl.entity.QTeam.team;
 
 @Repository
 @RequiredArgsConstructor
+@Transactional(readOnly = true) // 조회는 읽기 전용 트랜잭션 (스냅샷, flush 생략)
 public class MemberJpaRepository {
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchQueryCache searchQueryCache;
 
 
+    @Transactional
     public void save(Member member){
         em.persist(member);
     }
@@ -40,15 +48,15 @@ public class MemberJpaRepository {
 
     public List<Member> findAll(){
 
-        return em.createQuery("select m from Member m",Member.class)
+        return ReadOnlyQuery.of(em.createQuery("select m from Member m",Member.class))
                 .getResultList();
 
     }
 
     public List<Member> findAll_Querydsl(){
 
-       return queryFactory.
-               selectFrom(member)
+       return ReadOnlyQuery.of(queryFactory.
+               selectFrom(member))
                .fetch();
 
     }
@@ -56,7 +64,7 @@ public class MemberJpaRepository {
 
     public List<Member> findByUsername(String username){
 
-        return em.createQuery("select m from Member m where m.username=:username",Member.class)
+        return ReadOnlyQuery.of(em.createQuery("select m from Member m where m.username=:username",Member.class))
                 .setParameter("username",username)
                 .getResultList();
 
@@ -64,9 +72,9 @@ public class MemberJpaRepository {
 
     public List<Member> findByUsername_Querydsl(String username){
 
-        return queryFactory
+        return ReadOnlyQuery.of(queryFactory
                 .selectFrom(member)
-                .where(member.username.eq(username))
+                .where(member.username.eq(username)))
                 .fetch();
 
     }
@@ -77,8 +85,14 @@ public class MemberJpaRepository {
         if (hasText(condition.getUsername())){
             builder.and(member.username.eq(condition.getUsername()));
         }
+        if (hasText(condition.getUsernameStartsWith())){
+            builder.and(UsernameSearch.startsWith(condition.getUsernameStartsWith()));
+        }
+        if (hasText(condition.getUsernameContains())){
+            builder.and(UsernameSearch.contains(condition.getUsernameContains()));
+        }
         if (hasText(condition.getTeamName())){
-            builder.and(team.name.eq(condition.getTeamName()));
+            builder.and(TeamSearch.nameEq(condition.getTeamName()));
         }
         if (condition.getAgeGoe()!=null){
             builder.and(member.age.goe(condition.getAgeGoe()));
@@ -102,7 +116,20 @@ public class MemberJpaRepository {
 
     }
 
+    //조건 모양별로 캐시된 JPQL 에 파라미터만 바인딩해서 실행
     public List<MemberTeamDto> search(MemberSearchCondition condition){
+        if (!MemberSearchQueryCache.isCacheable(condition)) {
+            return searchQuery(condition).fetch();
+        }
+        return searchQueryCache.get(condition, this::searchQuery).fetch(em, condition);
+    }
+
+    //조건 모양별로 캐시된 검색 쿼리 (SearchIndexCheck 에서 실행계획 확인에 사용)
+    public MemberSearchQueryCache.SearchQuery searchQueryOf(int shape){
+        return searchQueryCache.get(shape, this::searchQuery);
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition){
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -113,10 +140,25 @@ public class MemberJpaRepository {
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .fetch();
+                        ageLoe(condition.getAgeLoe()));
+    }
+
+    /**
+     * search 와 같은 결과를 리스트로 모으지 않고 한 건씩 action 에 넘긴다.
+     * forward-only 스크롤(getResultStream)로 fetchSize 만큼씩 JDBC 에서 가져오므로
+     * 결과가 몇 건이든 힙 사용량이 일정하다. 스트림은 커넥션을 잡고 있어야 해서 트랜잭션 안에서 소비한다.
+     */
+    @Transactional(readOnly = true)
+    public void searchStream(MemberSearchCondition condition, int fetchSize, Consumer<MemberTeamDto> action){
+        try (Stream<MemberTeamDto> stream = searchQuery(condition)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .stream()) {
+            stream.forEach(action);
+        }
     }
 //    private BooleanExpression ageBetween(int ageLoe,int ageGoe){
 //        return ageGoe(ageLoe).and(ageGoe(ageGoe));
@@ -126,10 +168,6 @@ public class MemberJpaRepository {
         return hasText(username) ? member.username.eq(username) : null;
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null ;
-    }
-
     private BooleanExpression ageGoe(Integer ageGoe) {
         return ageGoe !=null ? member.age.goe(ageGoe) : null;
     }
@@ -0,0 +1,644 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 검색용 메모리 읽기 모델 (member.read-model.enabled=true, /v6/members)
+ *
+ * 회원 한 명을 배열의 한 칸(row)으로 들고 있다: long[] id, int[] 나이, int[] 팀 코드(팀 id 를 0,1,2.. 로 바꾼 값), username.
+ * 나이는 나이별 row 비트맵(TreeMap, 범위 검색은 subMap 을 or), 팀은 팀 코드별 row 비트맵으로 걸러서
+ * MemberSearchCondition 검색과 페이징을 DB 없이 처리한다. username 조건은 남은 row 만 비교한다.
+ * 결과는 id 순서다. DB 에서 읽어온 row 는 id 순서로 놓이고, 그 뒤에 추가된 row 는 시퀀스 블록이나 커밋 순서 때문에
+ * id 순서가 아닐 수 있으므로 따로 id 순서 색인(tailOrder)을 두고 결과를 낼 때 둘을 합친다.
+ * id 로 row 를 찾을 때도 두 곳을 이진 탐색한다.
+ *
+ * 변경은 {@link TeamStats} 와 같이 Hibernate 커밋 후 이벤트로 반영하므로 커밋된 데이터만 보인다.
+ * 이벤트는 회원의 변경 후 상태를 통째로 들고 있으므로, 다시 읽어오는 동안 모아둔 변경을 다시 적용해도
+ * (이미 읽어온 id 의 insert 는 update 로) 같은 회원이 두번 들어가지 않고 마지막 이벤트의 상태가 남는다.
+ * 삭제된 row 는 비트맵에서만 빠지고 자리는 다시 읽어올 때(member.read-model.rebuild-interval) 정리된다.
+ * 벌크 update/delete 는 이벤트가 없으므로 {@link #rebuildAfterCommit()} 로 다시 읽어온다.
+ */
+@Slf4j
+@Component
+public class MemberReadModel {
+
+    private static final int LOAD_FETCH_SIZE = 1000;
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final Duration rebuildInterval;
+    private final ScheduledExecutorService rebuilder =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("member-read-model-"));
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final Object rebuildLock = new Object();
+    //검색은 여러 스레드가 같이, 변경은 혼자
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //아래 필드는 lock 으로 보호
+    private Columns columns = new Columns(0);
+    private boolean ready; // 처음 읽어오기 전에는 변경을 무시한다 (읽어올 때 포함됨)
+    private List<Consumer<Columns>> pending; // 다시 읽어오는 중에 들어온 변경
+
+    public MemberReadModel(EntityManagerFactory emf,
+                           @Value("${member.read-model.enabled:false}") boolean enabled,
+                           @Value("${member.read-model.rebuild-interval:10m}") Duration rebuildInterval) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        CommitListener listener = new CommitListener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRebuildJob() {
+        if (!enabled) {
+            return;
+        }
+        long intervalMillis = rebuildInterval.toMillis();
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 처음 읽어오기가 끝났는지. 그 전에는 search 를 쓸 수 없으므로 DB 로 조회한다
+     */
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return ready;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        lock.readLock().lock();
+        try {
+            checkReady();
+            BitSet rows = columns.matches(condition);
+            List<MemberTeamDto> result = new ArrayList<>(rows.cardinality());
+            columns.forEachInIdOrder(rows, 0, Integer.MAX_VALUE, row -> result.add(columns.toDto(row)));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * searchPageSimple 과 같은 결과를 id 순서로. 정렬 조건(pageable.getSort())은 쓰지 않는다
+     */
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            checkReady();
+            BitSet rows = columns.matches(condition);
+            long total = rows.cardinality();
+            long skip = pageable.isPaged() ? pageable.getOffset() : 0;
+            int size = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+            List<MemberTeamDto> content = new ArrayList<>((int) Math.min(size, Math.max(0, total - skip)));
+            columns.forEachInIdOrder(rows, skip, size, row -> content.add(columns.toDto(row)));
+            return new PageImpl<>(content, pageable, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new IllegalStateException("member read model is not loaded yet");
+        }
+    }
+
+    /**
+     * 현재 트랜잭션이 커밋되면 (트랜잭션이 없으면 바로) 백그라운드에서 다시 읽어온다.
+     * 아직 한번도 읽어오지 않았으면 (사용하지 않으면) 아무것도 하지 않는다.
+     */
+    public void rebuildAfterCommit() {
+        if (!isReady()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            requestRebuild();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                requestRebuild();
+            }
+        });
+    }
+
+    private void requestRebuild() {
+        if (rebuildRequested.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuildQuietly);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("member read model rebuild failed", e);
+        }
+    }
+
+    /**
+     * 팀과 회원 전체를 id 순서로 다시 읽어온다. 회원은 스크롤로 LOAD_FETCH_SIZE 개씩 가져온다
+     */
+    public void rebuild() {
+        rebuild(() -> { });
+    }
+
+    //beforeLoad: 테스트에서 변경을 모으기 시작한 뒤 DB 를 읽기 전에 커밋을 끼워넣는다
+    void rebuild(Runnable beforeLoad) {
+        synchronized (rebuildLock) {
+            rebuildRequested.set(false);
+            write(() -> pending = new ArrayList<>());
+            beforeLoad.run();
+            Columns loaded;
+            try {
+                loaded = load();
+            } catch (RuntimeException e) {
+                write(() -> pending = null);
+                throw e;
+            }
+            write(() -> {
+                pending.forEach(change -> change.accept(loaded));
+                columns = loaded;
+                pending = null;
+                ready = true;
+            });
+            log.debug("member read model loaded: {} members", loaded.live.cardinality());
+        }
+    }
+
+    private Columns load() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            Long members = queryFactory.select(member.count()).from(member).fetchOne();
+            Columns loaded = new Columns(members == null ? 0 : members.intValue());
+            for (Tuple tuple : queryFactory.select(team.id, team.name).from(team).fetch()) {
+                loaded.putTeam(tuple.get(team.id), tuple.get(team.name));
+            }
+            try (Stream<Tuple> rows = queryFactory
+                    .select(member.id, member.username, member.age, member.team.id)
+                    .from(member)
+                    .orderBy(member.id.asc())
+                    .setHint(QueryHints.FETCH_SIZE, LOAD_FETCH_SIZE)
+                    .stream()) {
+                rows.forEach(tuple -> loaded.loadMember(tuple.get(member.id), tuple.get(member.username),
+                        tuple.get(member.age), tuple.get(member.team.id)));
+            }
+            return loaded;
+        } finally {
+            em.close();
+        }
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<Columns> change) {
+        write(() -> {
+            if (pending != null) {
+                pending.add(change);
+            } else if (ready) {
+                change.accept(columns);
+            }
+        });
+    }
+
+    //컨텍스트를 닫지 않고 main 이 끝나는 실행(테스트 런처 등)에서도 JVM 이 종료되도록
+    private static ThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private static Long teamIdOf(Object team) {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    private static Object property(EntityPersister persister, Object[] state, String name) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(name)];
+    }
+
+    /**
+     * 커밋된 변경만 받는다 (롤백되면 *CommitFailed 가 불리고 아무것도 하지 않음)
+     */
+    private class CommitListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getState();
+            if (event.getEntity() instanceof Member) {
+                Long id = (Long) event.getId();
+                String username = (String) property(persister, state, "username");
+                int age = (Integer) property(persister, state, "age");
+                Long teamId = teamIdOf(property(persister, state, "team"));
+                apply(columns -> columns.addMember(id, username, age, teamId));
+            } else if (event.getEntity() instanceof Team) {
+                Long teamId = (Long) event.getId();
+                String name = (String) property(persister, state, "name");
+                apply(columns -> columns.putTeam(teamId, name));
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getState();
+            if (event.getEntity() instanceof Member) {
+                Long id = (Long) event.getId();
+                String username = (String) property(persister, state, "username");
+                int age = (Integer) property(persister, state, "age");
+                Long teamId = teamIdOf(property(persister, state, "team"));
+                apply(columns -> columns.updateMember(id, username, age, teamId));
+            } else if (event.getEntity() instanceof Team) {
+                Long teamId = (Long) event.getId();
+                String name = (String) property(persister, state, "name");
+                apply(columns -> columns.putTeam(teamId, name));
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            Long id = (Long) event.getId();
+            if (event.getEntity() instanceof Member) {
+                apply(columns -> columns.removeMember(id));
+            } else if (event.getEntity() instanceof Team) {
+                apply(columns -> columns.removeTeam(id));
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation") // 5.x 에서는 아직 이 메서드로 물어본다 (requiresPostCommitHandling 의 기본 구현이 이걸 부른다)
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            Class<?> entityClass = persister.getMappedClass();
+            return entityClass == Member.class || entityClass == Team.class;
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+    }
+
+    /**
+     * 열(column) 단위 배열. row 는 추가된 순서이고 삭제된 row 는 live 에서 빠진다.
+     * [0, loadedRows) 는 DB 에서 id 순서로 읽어온 row, 그 뒤는 이벤트로 추가된 row (tailOrder 가 id 순서 색인)
+     */
+    private static class Columns {
+
+        private static final int NO_TEAM = -1;
+
+        private long[] ids;
+        private int[] ages;
+        private int[] teamCodes;
+        private String[] usernames;
+        private String[] usernameKeys; // usernameStartsWith/Contains 용 (Member.usernameKeyOf)
+        private int size;
+        private int loadedRows;
+        private int[] tailOrder = new int[16]; // loadedRows 이후 row 번호를 id 순서로
+        private int tailSize;
+        private final BitSet live = new BitSet();
+        private final TreeMap<Integer, BitSet> ageRows = new TreeMap<>(); // 나이 -> row
+
+        //팀 사전: 팀 id <-> 팀 코드
+        private final Map<Long, Integer> teamCodeById = new HashMap<>();
+        private long[] teamIds = new long[16];
+        private String[] teamNames = new String[16];
+        private BitSet[] teamRows = new BitSet[16];
+        private int teamCount;
+
+        private Columns(int capacity) {
+            capacity = Math.max(capacity, 16);
+            ids = new long[capacity];
+            ages = new int[capacity];
+            teamCodes = new int[capacity];
+            usernames = new String[capacity];
+            usernameKeys = new String[capacity];
+        }
+
+        //DB 에서 id 순서로 읽어온 회원 (이벤트를 적용하기 전에만)
+        private void loadMember(Long id, String username, int age, Long teamId) {
+            int row = newRow(id);
+            loadedRows = size;
+            set(row, username, age, teamId);
+        }
+
+        private void addMember(Long id, String username, int age, Long teamId) {
+            //다시 읽어온 값에 이미 들어있는 회원의 insert 이벤트
+            if (rowOf(id) >= 0) {
+                updateMember(id, username, age, teamId);
+                return;
+            }
+            int row = newRow(id);
+            if (tailSize == tailOrder.length) {
+                tailOrder = Arrays.copyOf(tailOrder, tailSize * 2);
+            }
+            //id 는 대부분 커지는 순서로 오므로 보통 맨 뒤에 붙는다
+            int position = tailSize;
+            while (position > 0 && ids[tailOrder[position - 1]] > id) {
+                position--;
+            }
+            System.arraycopy(tailOrder, position, tailOrder, position + 1, tailSize - position);
+            tailOrder[position] = row;
+            tailSize++;
+            set(row, username, age, teamId);
+        }
+
+        private int newRow(long id) {
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamCodes = Arrays.copyOf(teamCodes, capacity);
+                usernames = Arrays.copyOf(usernames, capacity);
+                usernameKeys = Arrays.copyOf(usernameKeys, capacity);
+            }
+            int row = size++;
+            ids[row] = id;
+            live.set(row);
+            return row;
+        }
+
+        private void updateMember(Long id, String username, int age, Long teamId) {
+            int row = rowOf(id);
+            if (row < 0) {
+                return;
+            }
+            unindex(row);
+            set(row, username, age, teamId);
+        }
+
+        private void removeMember(Long id) {
+            int row = rowOf(id);
+            if (row < 0) {
+                return;
+            }
+            unindex(row);
+            live.clear(row);
+            usernames[row] = null;
+            usernameKeys[row] = null;
+        }
+
+        private void set(int row, String username, int age, Long teamId) {
+            usernames[row] = username;
+            usernameKeys[row] = Member.usernameKeyOf(username);
+            ages[row] = age;
+            ageRows.computeIfAbsent(age, key -> new BitSet()).set(row);
+            int teamCode = teamId == null ? NO_TEAM : teamCodeOf(teamId);
+            teamCodes[row] = teamCode;
+            if (teamCode != NO_TEAM) {
+                teamRows[teamCode].set(row);
+            }
+        }
+
+        private void unindex(int row) {
+            BitSet sameAge = ageRows.get(ages[row]);
+            sameAge.clear(row);
+            if (sameAge.isEmpty()) {
+                ageRows.remove(ages[row]);
+            }
+            if (teamCodes[row] != NO_TEAM) {
+                teamRows[teamCodes[row]].clear(row);
+            }
+        }
+
+        private int rowOf(long id) {
+            int row = Arrays.binarySearch(ids, 0, loadedRows, id);
+            if (row < 0) {
+                int low = 0;
+                int high = tailSize - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    long midId = ids[tailOrder[mid]];
+                    if (midId < id) {
+                        low = mid + 1;
+                    } else if (midId > id) {
+                        high = mid - 1;
+                    } else {
+                        row = tailOrder[mid];
+                        break;
+                    }
+                }
+            }
+            return row >= 0 && live.get(row) ? row : -1;
+        }
+
+        /**
+         * rows 를 id 순서로 skip 개 건너뛰고 limit 개까지 action 에 넘긴다. 읽어온 row 와 추가된 row 를 id 로 합친다
+         */
+        private void forEachInIdOrder(BitSet rows, long skip, int limit, IntConsumer action) {
+            int loaded = nextLoaded(rows, 0);
+            int tail = nextTail(rows, 0);
+            while (limit > 0 && (loaded >= 0 || tail >= 0)) {
+                int row;
+                if (tail < 0 || (loaded >= 0 && ids[loaded] < ids[tailOrder[tail]])) {
+                    row = loaded;
+                    loaded = nextLoaded(rows, loaded + 1);
+                } else {
+                    row = tailOrder[tail];
+                    tail = nextTail(rows, tail + 1);
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                action.accept(row);
+                limit--;
+            }
+        }
+
+        private int nextLoaded(BitSet rows, int from) {
+            int row = rows.nextSetBit(from);
+            return row >= 0 && row < loadedRows ? row : -1;
+        }
+
+        private int nextTail(BitSet rows, int from) {
+            for (int index = from; index < tailSize; index++) {
+                if (rows.get(tailOrder[index])) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        //회원 insert 이벤트가 팀보다 먼저 올 수 있으므로 이름 없이 코드를 먼저 만든다
+        private int teamCodeOf(Long teamId) {
+            Integer code = teamCodeById.get(teamId);
+            if (code != null) {
+                return code;
+            }
+            if (teamCount == teamIds.length) {
+                teamIds = Arrays.copyOf(teamIds, teamCount * 2);
+                teamNames = Arrays.copyOf(teamNames, teamCount * 2);
+                teamRows = Arrays.copyOf(teamRows, teamCount * 2);
+            }
+            int newCode = teamCount++;
+            teamIds[newCode] = teamId;
+            teamRows[newCode] = new BitSet();
+            teamCodeById.put(teamId, newCode);
+            return newCode;
+        }
+
+        private void putTeam(Long teamId, String name) {
+            teamNames[teamCodeOf(teamId)] = name;
+        }
+
+        //팀은 회원이 없어야 지울 수 있으므로 이름만 지운다
+        private void removeTeam(Long teamId) {
+            Integer code = teamCodeById.get(teamId);
+            if (code != null) {
+                teamNames[code] = null;
+            }
+        }
+
+        private BitSet matches(MemberSearchCondition condition) {
+            BitSet rows = (BitSet) live.clone();
+            if (hasText(condition.getTeamName())) {
+                //이름이 같은 팀이 여러개일 수 있다
+                BitSet teams = new BitSet();
+                for (int code = 0; code < teamCount; code++) {
+                    if (condition.getTeamName().equals(teamNames[code])) {
+                        teams.or(teamRows[code]);
+                    }
+                }
+                rows.and(teams);
+            }
+            if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+                rows.and(ageRange(condition.getAgeGoe(), condition.getAgeLoe()));
+            }
+            if (hasText(condition.getUsername()) || hasText(condition.getUsernameStartsWith()) || hasText(condition.getUsernameContains())) {
+                String username = hasText(condition.getUsername()) ? condition.getUsername() : null;
+                String prefix = hasText(condition.getUsernameStartsWith()) ? Member.usernameKeyOf(condition.getUsernameStartsWith()) : null;
+                String text = hasText(condition.getUsernameContains()) ? Member.usernameKeyOf(condition.getUsernameContains()) : null;
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    String key = usernameKeys[row];
+                    if ((username != null && !username.equals(usernames[row]))
+                            || (prefix != null && (key == null || !key.startsWith(prefix)))
+                            || (text != null && (key == null || !key.contains(text)))) {
+                        rows.clear(row);
+                    }
+                }
+            }
+            return rows;
+        }
+
+        private BitSet ageRange(Integer ageGoe, Integer ageLoe) {
+            BitSet rows = new BitSet();
+            if (ageGoe != null && ageLoe != null && ageGoe > ageLoe) {
+                return rows;
+            }
+            Map<Integer, BitSet> range;
+            if (ageGoe == null) {
+                range = ageRows.headMap(ageLoe, true);
+            } else if (ageLoe == null) {
+                range = ageRows.tailMap(ageGoe, true);
+            } else {
+                range = ageRows.subMap(ageGoe, true, ageLoe, true);
+            }
+            range.values().forEach(rows::or);
+            return rows;
+        }
+
+        private MemberTeamDto toDto(int row) {
+            int teamCode = teamCodes[row];
+            return teamCode == NO_TEAM
+                    ? new MemberTeamDto(ids[row], usernames[row], ages[row], null, null)
+                    : new MemberTeamDto(ids[row], usernames[row], ages[row], teamIds[teamCode], teamNames[teamCode]);
+        }
+    }
+}
@@ -2,13 +2,25 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import study.querydsl.dto.CountedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.suppert.Coalesced;
 
 import java.util.List;
 
 public interface MemberRepositoryCustom {
+    @Coalesced
     List<MemberTeamDto> search(MemberSearchCondition condition);
+    @Coalesced
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
+    @Coalesced
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition,Pageable pageable);
+    @Coalesced
+    CountedPage<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, CountMode countMode);
+    @Coalesced
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+    List<MemberTeamDto> searchAfter(MemberSearchCondition condition, Long lastMemberId, int size);
+    List<List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions);
 }
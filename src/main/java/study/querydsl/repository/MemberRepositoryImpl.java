@@ -1,6 +1,5 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
@@ -8,16 +7,27 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.CountedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.suppert.ConcurrentCountExecutor;
+import study.querydsl.repository.suppert.CountQueryDerivation;
+import study.querydsl.repository.suppert.QueryStats;
+import study.querydsl.repository.suppert.SliceQuery;
+import study.querydsl.repository.suppert.UnionAllQuery;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.OptionalLong;
 
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
@@ -25,13 +35,28 @@ import static study.querydsl.entity.QTeam.team;
 
 
 @Service
+@Transactional(readOnly = true) // 모두 조회 메서드. 쓰기 트랜잭션 안에서 호출하면 그 트랜잭션에 참여한다
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
+    //searchBatch 한번에 묶을 수 있는 조건 수 (SQL 길이와 파라미터 수 제한)
+    public static final int MAX_BATCH_CONDITIONS = 20;
+
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberCountCache countCache;
+    private final ConcurrentCountExecutor countExecutor;
+    private final TeamRepository teamRepository;
+    private final TeamStats teamStats;
 
 
-    public MemberRepositoryImpl(EntityManager em){
+    public MemberRepositoryImpl(EntityManager em, MemberCountCache countCache, ConcurrentCountExecutor countExecutor,
+                                TeamRepository teamRepository, TeamStats teamStats){
+        this.em=em;
         this.queryFactory=new JPAQueryFactory(em);
+        this.countCache=countCache;
+        this.countExecutor=countExecutor;
+        this.teamRepository=teamRepository;
+        this.teamStats=teamStats;
     }
 
 //    /**
@@ -55,7 +80,9 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe()))
                 .fetch();
@@ -63,7 +90,7 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -73,22 +100,25 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
+                        ageLoe(condition.getAgeLoe()));
+
+        List<MemberTeamDto> content = query
                 .offset(pageable.getOffset()) // 몇번쨰부터 시작할거야
                 .limit(pageable.getPageSize())
-                .fetchResults();
-
-        List<MemberTeamDto> content = results.getResults();//실제 데이터
-        long total = results.getTotal();// 카운트쿼리
+                .fetch();//실제 데이터
+        // 카운트쿼리: 정렬,페이징,필요없는 조인을 뺀 count(member.id) 로 파생 (같은 조건이면 캐시된 값 사용)
+        long total = countCache.get(condition, CountQueryDerivation.countOf(queryFactory, query, member.id));
 
         return new PageImpl<>(content,pageable,total);
     }
 
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+        JPAQuery<MemberTeamDto> contentQuery = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -98,27 +128,158 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe()))
                 .offset(pageable.getOffset()) // 몇번쨰부터 시작할거야
-                .limit(pageable.getPageSize())
-                .fetch();
+                .limit(pageable.getPageSize());
         JPAQuery<Member> countquery = queryFactory
                 .select(member)
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe()));
 
 
-        return PageableExecutionUtils.getPage(content,pageable,()->countquery.fetchCount());
         // 컨텐츠사이즈가 페이지사이즈보다 작을 경우  첫페이지나 마지막페이지일 경우 카운트 쿼리를 날리지않음
+        // concurrent-count 설정시 카운트 쿼리는 다른 커넥션에서 컨텐츠 쿼리와 동시에 실행된다
+        return countExecutor.getPage(contentQuery::fetch, pageable,
+                em -> countCache.get(condition, countquery.clone(em)::fetchCount));
 
 //        return new PageImpl<>(content,pageable,total);
     }
+
+    @Override
+    public CountedPage<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, CountMode countMode) {
+        if (countMode == CountMode.NONE) {
+            return searchPageWithoutCount(condition, pageable);
+        }
+        if (countMode == CountMode.ESTIMATED && !hasText(condition.getUsername())
+                && !UsernameSearch.hasCondition(condition.getUsernameStartsWith(), condition.getUsernameContains())) {
+            return searchPageEstimated(condition, pageable);
+        }
+        Page<MemberTeamDto> page = searchPageComplex(condition, pageable);
+        return new CountedPage<>(page.getContent(), pageable, page.getTotalElements(), true);
+    }
+
+    //첫 페이지나 마지막 페이지처럼 컨텐츠만으로 전체 건수를 알 수 있으면 그 값은 정확하다
+    private CountedPage<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = searchQuery(condition)
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        boolean[] estimated = {false};
+        boolean[] counted = {false};
+        Page<MemberTeamDto> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            List<Long> teamIds = hasText(condition.getTeamName()) ? teamRepository.findIdsByName(condition.getTeamName()) : null;
+            OptionalLong estimate = teamStats.estimateMembers(teamIds, condition.getAgeGoe(), condition.getAgeLoe());
+            if (estimate.isPresent()) {
+                estimated[0] = true;
+                return estimate.getAsLong();
+            }
+            //기동 직후 TeamStats 가 아직 계산되지 않았으면 정확하게 센다
+            counted[0] = true;
+            return countCache.get(condition, CountQueryDerivation.countOf(queryFactory, searchQuery(condition), member.id));
+        });
+        QueryStats.countQuery(!counted[0]);
+        return new CountedPage<>(content, pageable, page.getTotalElements(), !estimated[0]);
+    }
+
+    //한 건 더 가져와서 다음 페이지 여부만 판단한다 (searchSlice 와 같음)
+    private CountedPage<MemberTeamDto> searchPageWithoutCount(MemberSearchCondition condition, Pageable pageable) {
+        Slice<MemberTeamDto> slice = SliceQuery.fetchSlice(searchQuery(condition), pageable);
+        QueryStats.countQuery(true);
+        List<MemberTeamDto> content = slice.getContent();
+        if (slice.hasNext()) {
+            return new CountedPage<>(content, pageable, pageable.getOffset() + content.size() + 1, false);
+        }
+        boolean exact = !content.isEmpty() || pageable.getOffset() == 0;
+        return new CountedPage<>(content, pageable, pageable.getOffset() + content.size(), exact);
+    }
+
+    /**
+     * 무한 스크롤용. 카운트 쿼리 없이 size + 1 개를 조회해서 다음 페이지가 있는지만 알려준다.
+     * offset 이 바뀌어도 같은 순서가 되도록 member.id 로 정렬한다
+     */
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        return SliceQuery.fetchSlice(searchQuery(condition).orderBy(member.id.asc()), pageable);
+    }
+
+    /**
+     * 조건 여러개를 UNION ALL 로 묶어서 한번에 조회하고 조건 순서대로 결과를 나눠준다 (조건마다 member.id 순서).
+     * 조건마다 search 를 따로 부르는 것과 결과는 같고, statement 와 커넥션 사용은 한번이다
+     */
+    @Override
+    public List<List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions) {
+        if (conditions == null) {
+            throw new IllegalArgumentException("conditions is null");
+        }
+        if (conditions.size() > MAX_BATCH_CONDITIONS) {
+            throw new IllegalArgumentException("too many conditions: " + conditions.size() + " (max " + MAX_BATCH_CONDITIONS + ")");
+        }
+        List<JPAQuery<MemberTeamDto>> queries = new ArrayList<>(conditions.size());
+        for (MemberSearchCondition condition : conditions) {
+            if (condition == null) {
+                throw new IllegalArgumentException("condition[" + queries.size() + "] is null");
+            }
+            queries.add(searchQuery(condition));
+        }
+        List<List<MemberTeamDto>> results = UnionAllQuery.fetch(em, queries);
+        results.forEach(result -> result.sort(Comparator.comparing(MemberTeamDto::getMemberId)));
+        return results;
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()));
+    }
+
+    /**
+     * 키셋(seek) 페이징: offset 대신 마지막으로 받은 member.id 이후부터 조회한다.
+     * PK 인덱스를 타기 때문에 몇번째 페이지든 첫 페이지와 비용이 같다.
+     */
+    @Override
+    public List<MemberTeamDto> searchAfter(MemberSearchCondition condition, Long lastMemberId, int size) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()),
+                        memberIdGt(lastMemberId))
+                .orderBy(member.id.asc())
+                .limit(size)
+                .fetch();
+    }
 //    private BooleanExpression ageBetween(int ageLoe,int ageGoe){
 //        return ageGoe(ageLoe).and(ageGoe(ageGoe));
 //    }
@@ -127,10 +288,6 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         return hasText(username) ? member.username.eq(username) : null;
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null ;
-    }
-
     private BooleanExpression ageGoe(Integer ageGoe) {
         return ageGoe !=null ? member.age.goe(ageGoe) : null;
     }
@@ -139,5 +296,9 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         return ageLoe!=null ? member.age.loe(ageLoe) : null;
     }
 
+    private BooleanExpression memberIdGt(Long lastMemberId) {
+        return lastMemberId!=null ? member.id.gt(lastMemberId) : null;
+    }
+
 
 }
@@ -0,0 +1,45 @@
+package study.querydsl.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 결과가 같은 검색조건은 같은 키가 되도록 정규화한 값 (MemberCountCache, SearchCoalescingAspect 의 키)
+ *
+ * MemberSearchCondition 은 바뀔 수 있는 객체라서 키로 쓸 때는 값을 복사해둔다.
+ */
+@EqualsAndHashCode
+@ToString
+final class MemberSearchKey {
+
+    private final String username;
+    private final String usernameStartsWith;
+    private final String usernameContains;
+    private final String teamName;
+    private final Integer ageGoe;
+    private final Integer ageLoe;
+
+    private MemberSearchKey(String username, String usernameStartsWith, String usernameContains, String teamName, Integer ageGoe, Integer ageLoe) {
+        this.username = username;
+        this.usernameStartsWith = usernameStartsWith;
+        this.usernameContains = usernameContains;
+        this.teamName = teamName;
+        this.ageGoe = ageGoe;
+        this.ageLoe = ageLoe;
+    }
+
+    //usernameEq, TeamSearch.nameEq 와 같은 기준(hasText)으로 조건이 없는 값은 null 로 맞춘다. 앞부분/부분 일치는 대소문자를 무시하므로 정규화한 값으로
+    static MemberSearchKey of(MemberSearchCondition condition) {
+        return new MemberSearchKey(
+                hasText(condition.getUsername()) ? condition.getUsername() : null,
+                hasText(condition.getUsernameStartsWith()) ? Member.usernameKeyOf(condition.getUsernameStartsWith()) : null,
+                hasText(condition.getUsernameContains()) ? Member.usernameKeyOf(condition.getUsernameContains()) : null,
+                hasText(condition.getTeamName()) ? condition.getTeamName() : null,
+                condition.getAgeGoe(),
+                condition.getAgeLoe());
+    }
+}
@@ -0,0 +1,203 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * search(MemberSearchCondition) 의 JPQL 캐시
+ *
+ * 검색조건 6개(username, usernameStartsWith, usernameContains, teamName, ageGoe, ageLoe)가 있냐 없냐에 따라 쿼리 모양은 64가지 뿐이다.
+ * usernameContains 는 trigram 개수를 컬렉션 파라미터 하나로 넘기므로 검색어 길이가 달라도 모양은 같다.
+ * 단 3글자보다 짧으면 trigram 조건이 빠져서 모양이 달라지므로 캐시하지 않는다 (isCacheable)
+ * 모양별로 한번만 Querydsl 로 JPQL 을 만들어두고, 이후에는 파라미터만 바인딩해서 실행한다.
+ * JPQL 문자열이 항상 같으므로 Hibernate 의 쿼리 플랜 캐시도 그대로 재사용된다.
+ *
+ * 메트릭 member.search.shape-cache (result=hit|miss)
+ */
+@Component
+public class MemberSearchQueryCache {
+
+    public static final int USERNAME = 1;
+    public static final int TEAM_NAME = 1 << 1;
+    public static final int AGE_GOE = 1 << 2;
+    public static final int AGE_LOE = 1 << 3;
+    public static final int USERNAME_STARTS_WITH = 1 << 4;
+    public static final int USERNAME_CONTAINS = 1 << 5;
+    public static final int SHAPE_COUNT = 1 << 6;
+
+    private final AtomicReferenceArray<SearchQuery> queries = new AtomicReferenceArray<>(SHAPE_COUNT);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public MemberSearchQueryCache(MeterRegistry registry) {
+        FunctionCounter.builder("member.search.shape-cache", hitCount, AtomicLong::get)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("member.search.shape-cache", missCount, AtomicLong::get)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * @param queryBuilder 캐시에 없을 때 해당 모양의 Querydsl 쿼리를 만든다
+     */
+    public SearchQuery get(MemberSearchCondition condition, Function<MemberSearchCondition, JPAQuery<MemberTeamDto>> queryBuilder) {
+        return get(shapeOf(condition), queryBuilder);
+    }
+
+    public SearchQuery get(int shape, Function<MemberSearchCondition, JPAQuery<MemberTeamDto>> queryBuilder) {
+        SearchQuery query = queries.get(shape);
+        if (query != null) {
+            hitCount.incrementAndGet();
+            return query;
+        }
+        missCount.incrementAndGet();
+        //동시에 만들어도 결과는 같으므로 먼저 들어간 것을 쓴다
+        queries.compareAndSet(shape, null, SearchQuery.build(shape, queryBuilder));
+        return queries.get(shape);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public static boolean isCacheable(MemberSearchCondition condition) {
+        return !hasText(condition.getUsernameContains()) || UsernameSearch.indexedContains(condition.getUsernameContains());
+    }
+
+    public static int shapeOf(MemberSearchCondition condition) {
+        int shape = 0;
+        if (hasText(condition.getUsername())) {
+            shape |= USERNAME;
+        }
+        if (hasText(condition.getUsernameStartsWith())) {
+            shape |= USERNAME_STARTS_WITH;
+        }
+        if (hasText(condition.getUsernameContains())) {
+            shape |= USERNAME_CONTAINS;
+        }
+        if (hasText(condition.getTeamName())) {
+            shape |= TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE;
+        }
+        return shape;
+    }
+
+    public static final class SearchQuery {
+
+        private final int shape;
+        private final String jpql;
+        private final FactoryExpression<MemberTeamDto> projection;
+
+        private SearchQuery(int shape, String jpql, FactoryExpression<MemberTeamDto> projection) {
+            this.shape = shape;
+            this.jpql = jpql;
+            this.projection = projection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static SearchQuery build(int shape, Function<MemberSearchCondition, JPAQuery<MemberTeamDto>> queryBuilder) {
+            JPAQuery<MemberTeamDto> query = queryBuilder.apply(placeholderOf(shape));
+            String jpql = query.toString();
+            //파라미터는 where 절에 나온 순서대로 ?1, ?2 ... 로 직렬화된다 (usernameContains 는 like, trigram 목록, trigram 개수 3개)
+            int parameterCount = Integer.bitCount(shape) + ((shape & USERNAME_CONTAINS) != 0 ? 2 : 0);
+            if ((parameterCount > 0 && !jpql.contains("?" + parameterCount)) || jpql.contains("?" + (parameterCount + 1))) {
+                throw new IllegalStateException("검색 쿼리의 파라미터 개수가 조건과 다릅니다: " + jpql);
+            }
+            return new SearchQuery(shape, jpql, (FactoryExpression<MemberTeamDto>) query.getMetadata().getProjection());
+        }
+
+        /**
+         * 모양만 맞춘 조건. 값이 같으면 Querydsl 이 파라미터를 하나로 합치므로 서로 다른 값을 넣는다.
+         */
+        private static MemberSearchCondition placeholderOf(int shape) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((shape & USERNAME) != 0) {
+                condition.setUsername("{username}");
+            }
+            if ((shape & USERNAME_STARTS_WITH) != 0) {
+                condition.setUsernameStartsWith("{usernameStartsWith}");
+            }
+            if ((shape & USERNAME_CONTAINS) != 0) {
+                condition.setUsernameContains("{usernameContains}");
+            }
+            if ((shape & TEAM_NAME) != 0) {
+                condition.setTeamName("{teamName}");
+            }
+            if ((shape & AGE_GOE) != 0) {
+                condition.setAgeGoe(Integer.MIN_VALUE);
+            }
+            if ((shape & AGE_LOE) != 0) {
+                condition.setAgeLoe(Integer.MAX_VALUE);
+            }
+            return condition;
+        }
+
+        public Query bind(Query query, MemberSearchCondition condition) {
+            int position = 1;
+            if ((shape & USERNAME) != 0) {
+                query.setParameter(position++, condition.getUsername());
+            }
+            if ((shape & USERNAME_STARTS_WITH) != 0) {
+                query.setParameter(position++, UsernameSearch.prefixPattern(condition.getUsernameStartsWith()));
+            }
+            if ((shape & USERNAME_CONTAINS) != 0) {
+                List<String> trigrams = UsernameSearch.trigramsOf(condition.getUsernameContains());
+                query.setParameter(position++, UsernameSearch.containsPattern(condition.getUsernameContains()));
+                query.setParameter(position++, trigrams);
+                query.setParameter(position++, (long) trigrams.size());
+            }
+            if ((shape & TEAM_NAME) != 0) {
+                query.setParameter(position++, condition.getTeamName());
+            }
+            if ((shape & AGE_GOE) != 0) {
+                query.setParameter(position++, condition.getAgeGoe());
+            }
+            if ((shape & AGE_LOE) != 0) {
+                query.setParameter(position, condition.getAgeLoe());
+            }
+            return query;
+        }
+
+        public List<MemberTeamDto> fetch(EntityManager em, MemberSearchCondition condition) {
+            List<?> rows = bind(em.createQuery(jpql), condition).getResultList();
+            List<MemberTeamDto> result = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                result.add(projection.newInstance((Object[]) row));
+            }
+            return result;
+        }
+
+        public int getShape() {
+            return shape;
+        }
+
+        public String getJpql() {
+            return jpql;
+        }
+    }
+}
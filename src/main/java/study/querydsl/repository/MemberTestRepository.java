@@ -4,14 +4,17 @@ import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.entity.Member;
 
 import study.querydsl.entity.QMember;
 import study.querydsl.repository.suppert.Querydsl4RepositorySupport;
+import study.querydsl.repository.suppert.ReadOnlyQuery;
 
 import java.util.List;
 
@@ -21,6 +24,7 @@ import static study.querydsl.entity.QTeam.team;
 
 
 @Repository
+@Transactional(readOnly = true)
 public class MemberTestRepository extends Querydsl4RepositorySupport{
 
 
@@ -30,32 +34,46 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
 
 
     public List<Member> basicSelect(){
-        return select(member)
-                .from(member)
-                .fetch();
+        return basicSelect(TeamFetch.BATCH);
+    }
+    public List<Member> basicSelect(TeamFetch teamFetch){
+        JPAQuery<Member> query = select(member)
+                .from(member);
+        if (teamFetch == TeamFetch.JOIN) {
+            query.leftJoin(member.team, team).fetchJoin();
+        }
+        return ReadOnlyQuery.of(query).fetch();
     }
     public List<Member> basicSelectFrom(){
-        return selectFrom(member)
+        return ReadOnlyQuery.of(selectFrom(member))
                 .fetch();
     }
     public Page<Member> searchPageByApplyPage(MemberSearchCondition condition, Pageable pageable){
-        JPAQuery<Member> query = selectFrom(member)
-                .leftJoin(member.team,team)
+        return searchPageByApplyPage(condition, pageable, TeamFetch.BATCH);
+    }
+    public Page<Member> searchPageByApplyPage(MemberSearchCondition condition, Pageable pageable, TeamFetch teamFetch){
+        JPAQuery<Member> query = joinTeam(selectFrom(member), teamFetch)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 );
-        List<Member> content = getQuerydsl().applyPagination(pageable, query).fetch();
+        List<Member> content = getQuerydsl().applyPagination(pageable, ReadOnlyQuery.of(query)).fetch();
 
-        return PageableExecutionUtils.getPage(content,pageable,query::fetchCount);
+        return PageableExecutionUtils.getPage(content,pageable,deriveCount(query));
     }
     //위에 코드랑 똑같아진다. PageableExecutionUtils 를 쓸 필요가없음
     public Page<Member> applyPagination(MemberSearchCondition condition, Pageable pageable){
-        Page<Member> result = applyPagination(pageable, query -> query.selectFrom(member)
-                .leftJoin(member.team,team)
+        return applyPagination(condition, pageable, TeamFetch.BATCH);
+    }
+    public Page<Member> applyPagination(MemberSearchCondition condition, Pageable pageable, TeamFetch teamFetch){
+        Page<Member> result = applyPagination(pageable, query -> joinTeam(query.selectFrom(member), teamFetch)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
@@ -63,11 +81,27 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
         return result;
     }
 
+    //카운트 쿼리 없이 다음 페이지 여부만
+    public Slice<Member> applySlice(MemberSearchCondition condition, Pageable pageable){
+        return applySlice(pageable, query -> query.selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+        );
+    }
+
     public Page<Member> applyPagination2(MemberSearchCondition condition, Pageable pageable){
         Page<Member> result = applyPagination(pageable, contentQuery -> contentQuery.selectFrom(member)
                 .leftJoin(member.team,team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 ),countQuery->countQuery
@@ -75,19 +109,26 @@ public class MemberTestRepository extends Querydsl4RepositorySupport{
                 .from(member)
                 .leftJoin(member.team,team)
                 .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
+                       UsernameSearch.startsWith(condition.getUsernameStartsWith()),
+                       UsernameSearch.contains(condition.getUsernameContains()),
+                        TeamSearch.nameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
         );
         return result;
     }
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    //fetch join 은 카운트 쿼리를 파생할 때 일반 join 으로 바뀐다
+    private JPAQuery<Member> joinTeam(JPAQuery<Member> query, TeamFetch teamFetch) {
+        query.leftJoin(member.team, team);
+        if (teamFetch == TeamFetch.JOIN) {
+            query.fetchJoin();
+        }
+        return query;
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null ;
+    private BooleanExpression usernameEq(String username) {
+        return hasText(username) ? member.username.eq(username) : null;
     }
 
     private BooleanExpression ageGoe(Integer ageGoe) {
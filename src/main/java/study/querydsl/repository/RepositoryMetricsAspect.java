@@ -0,0 +1,137 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import study.querydsl.repository.suppert.QueryStats;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 리포지토리 메서드별 메트릭 (/actuator/metrics, /actuator/prometheus)
+ *
+ * <ul>
+ *     <li>member.repository.calls: 실행 시간 히스토그램 (repository, method, outcome=success|error|coalesced)</li>
+ *     <li>member.repository.rows: 반환한 row 수 (List, Page/Slice 의 content, Optional. List 의 List 는 안쪽 List 크기의 합)</li>
+ *     <li>member.repository.statements: 호출 한번에 실행한 JDBC statement 수 (같은 스레드 기준)</li>
+ *     <li>member.repository.count-query: 페이징 카운트 쿼리 실행/생략 횟수 (result=executed|skipped)</li>
+ * </ul>
+ *
+ * MemberRepositoryCustom 구현체, MemberJpaRepository, Querydsl4RepositorySupport 를 상속한 리포지토리의 조회 메서드
+ * (List, Optional, Page/Slice 를 돌려주는 public 메서드와 searchStream) 가 대상이다. save, setter 등은 재지 않는다.
+ *
+ * 리포지토리 호출 안에서 다른 리포지토리를 호출해도(중첩) 바깥 호출의 카운트 쿼리 기록은 안쪽 호출이 끝난 뒤 되돌려 놓는다.
+ * statement 수는 안쪽 호출에서 실행한 것까지 바깥 호출에 포함된다.
+ *
+ * {@link SearchCoalescingAspect} 가 실행 중인 같은 검색의 결과를 나눠받은 호출은 이 aspect 까지 오지 않으므로
+ * 그쪽에서 {@link #recordShared} 로 기록한다 (outcome=coalesced|error, statement 0).
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    @Around("(execution(public (java.util.List || java.util.Optional || org.springframework.data.domain.Slice+) *(..))"
+            + " || execution(public void searchStream(..))) && ("
+            + "(within(study.querydsl.repository.MemberRepositoryCustom+) && !within(org.springframework.data.repository.Repository+))"
+            + " || within(study.querydsl.repository.MemberJpaRepository)"
+            + " || (within(study.querydsl.repository.suppert.Querydsl4RepositorySupport+)"
+            + " && !within(study.querydsl.repository.suppert.Querydsl4RepositorySupport)))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName();
+        String method = joinPoint.getSignature().getName();
+
+        //바깥 호출이 이미 기록한 값은 따로 들고 있다가 끝나면 되돌린다
+        Boolean outerCountSkipped = QueryStats.pollCountSkipped();
+        long statementsBefore = QueryStats.statements();
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            Object result = joinPoint.proceed();
+            recordRows(repository, method, result);
+            return result;
+        } catch (Throwable e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            recordCall(repository, method, outcome, System.nanoTime() - start, QueryStats.statements() - statementsBefore);
+            Boolean countSkipped = QueryStats.pollCountSkipped();
+            if (countSkipped != null) {
+                Counter.builder("member.repository.count-query")
+                        .tags("repository", repository, "method", method, "result", countSkipped ? "skipped" : "executed")
+                        .register(registry)
+                        .increment();
+            }
+            if (outerCountSkipped != null) {
+                QueryStats.countQuery(outerCountSkipped);
+            }
+        }
+    }
+
+    /**
+     * 직접 실행하지 않고 다른 호출의 결과(예외)를 받은 호출
+     */
+    void recordShared(String repository, String method, long nanos, Object result, boolean error) {
+        if (!error) {
+            recordRows(repository, method, result);
+        }
+        recordCall(repository, method, error ? "error" : "coalesced", nanos, 0);
+    }
+
+    private void recordCall(String repository, String method, String outcome, long nanos, long statements) {
+        Timer.builder("member.repository.calls")
+                .tags("repository", repository, "method", method, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("member.repository.statements")
+                .tags("repository", repository, "method", method)
+                .register(registry)
+                .record(statements);
+    }
+
+    private void recordRows(String repository, String method, Object result) {
+        int rows = rowsOf(result);
+        if (rows < 0) {
+            return;
+        }
+        DistributionSummary.builder("member.repository.rows")
+                .baseUnit("rows")
+                .tags("repository", repository, "method", method)
+                .register(registry)
+                .record(rows);
+    }
+
+    private static int rowsOf(Object result) {
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Collection) {
+            //searchBatch 처럼 조건별 결과 목록을 돌려주면 안쪽 목록의 row 수를 더한다
+            int rows = 0;
+            for (Object element : (Collection<?>) result) {
+                if (!(element instanceof Collection)) {
+                    return ((Collection<?>) result).size();
+                }
+                rows += ((Collection<?>) element).size();
+            }
+            return rows;
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.suppert.Coalesced;
+import study.querydsl.repository.suppert.ReplicaRoutingDataSource;
+import study.querydsl.repository.suppert.SearchPermit;
+import study.querydsl.repository.suppert.SingleFlight;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Coalesced} 메서드에 같은 검색조건 + 페이지(Pageable, 정렬 포함)로 동시에 들어온 호출은 DB 에서 한번만 실행하고 결과를 나눠준다.
+ * (member.coalescing.enabled, 기다리는 최대 시간은 member.coalescing.max-wait)
+ *
+ * 기다리는 호출이 트랜잭션(커넥션)을 잡고 있지 않도록 트랜잭션 프록시보다 바깥에서 실행한다
+ * (리포지토리 인터페이스 {@link MemberRepositoryCustom} 에 붙인 @Coalesced 로 리포지토리 프록시에 적용).
+ * 벌크헤드 자리({@link SearchPermit})도 기다리는 동안은 돌려주므로 벌크헤드에는 실제로 DB 를 쓰는 호출만 남는다.
+ * 쓰기 트랜잭션 안에서의 호출은 아직 커밋하지 않은 변경을 봐야 하므로 합치지 않는다.
+ *
+ * 데이터 변경 전에 시작한 실행에는 변경 후의 호출이 끼지 않도록 {@link MemberCountCache#generation()} 을 키에 넣는다
+ * (이 인스턴스에서 일어난 변경 기준). replica 를 쓰면 readOnly 조회가 primary 로 가야 하는 호출(read-your-writes)과
+ * replica 로 가는 호출도 키를 나눈다.
+ *
+ * 메트릭 member.search.coalescing (method, result=leader|coalesced|timeout) 와 실행 중인 키 수 member.search.coalescing.in-flight.
+ * 결과를 나눠받은 호출은 리포지토리 구현체까지 가지 않으므로 member.repository.calls 에는 여기서 outcome=coalesced 로 기록한다.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SearchCoalescingAspect {
+
+    private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+    private final MeterRegistry registry;
+    private final RepositoryMetricsAspect repositoryMetrics;
+    private final MemberCountCache countCache;
+    private final ReplicaRoutingDataSource replicaRouting;
+    private final ListableBeanFactory beanFactory;
+    private final boolean enabled;
+    private final Duration maxWait;
+
+    //@Coalesced 가 붙은 인터페이스 -> 구현 클래스 이름 (RepositoryMetricsAspect 의 repository 태그와 같게)
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public SearchCoalescingAspect(MeterRegistry registry, RepositoryMetricsAspect repositoryMetrics,
+                                  MemberCountCache countCache, ObjectProvider<ReplicaRoutingDataSource> replicaRouting,
+                                  ListableBeanFactory beanFactory,
+                                  @Value("${member.coalescing.enabled:true}") boolean enabled,
+                                  @Value("${member.coalescing.max-wait:2s}") Duration maxWait) {
+        this.registry = registry;
+        this.repositoryMetrics = repositoryMetrics;
+        this.countCache = countCache;
+        this.replicaRouting = replicaRouting.getIfAvailable();
+        this.beanFactory = beanFactory;
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+        Gauge.builder("member.search.coalescing.in-flight", singleFlight, SingleFlight::inFlight).register(registry);
+    }
+
+    @Around("@annotation(study.querydsl.repository.suppert.Coalesced)")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!enabled || inReadWriteTransaction()) {
+            return joinPoint.proceed();
+        }
+        String method = joinPoint.getSignature().getName();
+        SingleFlight.Role[] roleOf = new SingleFlight.Role[1];
+        SearchPermit permit = SearchPermit.current();
+        long start = System.nanoTime();
+        Object result = null;
+        boolean error = true;
+        try {
+            result = singleFlight.execute(keyOf(joinPoint), maxWait, joinPoint::proceed, role -> {
+                roleOf[0] = role;
+                Counter.builder("member.search.coalescing")
+                        .tags("method", method, "result", role.name().toLowerCase(Locale.ROOT))
+                        .register(registry)
+                        .increment();
+                //기다리다가 직접 실행하면 DB 를 쓰므로 벌크헤드 자리를 다시 받는다
+                if (role == SingleFlight.Role.TIMEOUT && permit != null) {
+                    permit.reacquire();
+                }
+            }, () -> {
+                //leader 를 기다리는 동안은 벌크헤드 자리를 잡고 있지 않는다
+                if (permit != null) {
+                    permit.release();
+                }
+            });
+            error = false;
+            return result;
+        } finally {
+            if (roleOf[0] == SingleFlight.Role.COALESCED) {
+                repositoryMetrics.recordShared(repositoryOf(joinPoint), method, System.nanoTime() - start, result, error);
+            }
+        }
+    }
+
+    private static boolean inReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    //메서드 + 데이터 세대 (+ replica 라우팅) + 인자. 검색조건은 정규화해서 값이 같은 조건이면 같은 키가 된다 (Pageable 은 equals 가 page, size, sort 를 비교)
+    private List<Object> keyOf(ProceedingJoinPoint joinPoint) {
+        Object[] args = joinPoint.getArgs();
+        List<Object> key = new ArrayList<>(args.length + 3);
+        key.add(joinPoint.getSignature().toLongString());
+        key.add(countCache.generation());
+        if (replicaRouting != null) {
+            key.add(replicaRouting.readOnlyTarget());
+        }
+        for (Object arg : args) {
+            key.add(arg instanceof MemberSearchCondition ? MemberSearchKey.of((MemberSearchCondition) arg) : arg);
+        }
+        return key;
+    }
+
+    private String repositoryOf(ProceedingJoinPoint joinPoint) {
+        return repositoryNames.computeIfAbsent(joinPoint.getSignature().getDeclaringType(), type ->
+                beanFactory.getBeansOfType(type).values().stream()
+                        .filter(bean -> !(bean instanceof Repository))
+                        .map(bean -> AopUtils.getTargetClass(bean).getSimpleName())
+                        .findFirst()
+                        .orElse(type.getSimpleName()));
+    }
+}
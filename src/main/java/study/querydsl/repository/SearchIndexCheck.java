@@ -0,0 +1,133 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 기동시 search(MemberSearchCondition) 의 조건 모양별 SQL 을 H2 EXPLAIN 으로 확인해서
+ * 인덱스를 못 타고 테이블 전체를 읽는 모양이 있으면 경고를 남긴다. (member.index-check.enabled=false 로 끌 수 있음)
+ *
+ * 조건이 하나도 없는 모양(전체 조회)은 원래 전체를 읽으므로 확인하지 않는다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "member.index-check.enabled", havingValue = "true", matchIfMissing = true)
+public class SearchIndexCheck {
+
+    //테이블 접근 주석에 조건이 없으면 전체를 읽는다: /* PUBLIC.MEMBER.tableScan */ 또는 /* PUBLIC.IDX_xxx */ (인덱스 전체 스캔)
+    private static final Pattern FULL_SCAN = Pattern.compile("/\\* PUBLIC\\.[\\w.]+ \\*/");
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final EntityManagerFactory emf;
+    private final DataSource dataSource;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkOnStartup() {
+        try {
+            Map<Integer, String> fullScans = fullScanPlans();
+            fullScans.forEach((shape, plan) ->
+                    log.warn("member search shape {} reads the whole table, check indexes:\n{}", describe(shape), plan));
+            if (fullScans.isEmpty()) {
+                log.info("member search index check ok ({} shapes)", MemberSearchQueryCache.SHAPE_COUNT - 1);
+            }
+        } catch (SQLException e) {
+            log.warn("member search index check failed", e);
+        }
+    }
+
+    /**
+     * 테이블 스캔이 들어간 모양과 그 실행계획. H2 가 아니면 확인하지 않고 비어있는 결과를 준다.
+     */
+    public Map<Integer, String> fullScanPlans() throws SQLException {
+        Map<Integer, String> fullScans = new LinkedHashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            if (!"H2".equals(connection.getMetaData().getDatabaseProductName())) {
+                log.debug("member search index check skipped: not H2");
+                return fullScans;
+            }
+            for (int shape = 1; shape < MemberSearchQueryCache.SHAPE_COUNT; shape++) {
+                String plan = explain(connection, shape);
+                if (FULL_SCAN.matcher(plan).find()) {
+                    fullScans.put(shape, plan);
+                }
+            }
+        }
+        return fullScans;
+    }
+
+    @SuppressWarnings("deprecation") // getQueryPlanCache: Hibernate 5 에서 JPQL 이 바뀐 SQL 을 얻는 방법 (UnionAllQuery 와 같음)
+    private String explain(Connection connection, int shape) throws SQLException {
+        String jpql = memberJpaRepository.searchQueryOf(shape).getJpql();
+        HQLQueryPlan queryPlan = emf.unwrap(SessionFactoryImplementor.class)
+                .getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap());
+
+        StringBuilder plan = new StringBuilder();
+        for (String sql : queryPlan.getSqlStrings()) {
+            try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+                bindSample(statement, shape);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    //SearchQuery.bind 와 같은 순서 (username, usernameStartsWith, usernameContains, teamName, ageGoe, ageLoe)
+    //usernameContains 의 trigram 목록은 실행계획에서는 in (?) 하나로 나온다
+    private static void bindSample(PreparedStatement statement, int shape) throws SQLException {
+        int position = 1;
+        if ((shape & MemberSearchQueryCache.USERNAME) != 0) {
+            statement.setString(position++, "member1");
+        }
+        if ((shape & MemberSearchQueryCache.USERNAME_STARTS_WITH) != 0) {
+            statement.setString(position++, "mem%");
+        }
+        if ((shape & MemberSearchQueryCache.USERNAME_CONTAINS) != 0) {
+            statement.setString(position++, "%ber%");
+            statement.setString(position++, "ber");
+            statement.setLong(position++, 1L);
+        }
+        if ((shape & MemberSearchQueryCache.TEAM_NAME) != 0) {
+            statement.setString(position++, "teamA");
+        }
+        if ((shape & MemberSearchQueryCache.AGE_GOE) != 0) {
+            statement.setInt(position++, 10);
+        }
+        if ((shape & MemberSearchQueryCache.AGE_LOE) != 0) {
+            statement.setInt(position, 40);
+        }
+    }
+
+    private static String describe(int shape) {
+        StringBuilder description = new StringBuilder();
+        if ((shape & MemberSearchQueryCache.USERNAME) != 0) description.append("username ");
+        if ((shape & MemberSearchQueryCache.USERNAME_STARTS_WITH) != 0) description.append("usernameStartsWith ");
+        if ((shape & MemberSearchQueryCache.USERNAME_CONTAINS) != 0) description.append("usernameContains ");
+        if ((shape & MemberSearchQueryCache.TEAM_NAME) != 0) description.append("teamName ");
+        if ((shape & MemberSearchQueryCache.AGE_GOE) != 0) description.append("ageGoe ");
+        if ((shape & MemberSearchQueryCache.AGE_LOE) != 0) description.append("ageLoe ");
+        return description.toString().trim();
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Team 2차 캐시(엔티티 region, 팀 이름 쿼리 캐시)의 수동 비우기와 통계
+ *
+ * JPA/JPQL 로 바꾸면 Hibernate 가 알아서 갱신하므로, DB 를 직접 수정했을 때만 evict 하면 된다.
+ * 같은 통계는 /actuator/metrics 의 hibernate.second.level.cache.requests, hibernate.cache.query.requests 로도 볼 수 있다.
+ */
+@Component
+@RequiredArgsConstructor
+public class TeamCache {
+
+    public static final String TEAM_REGION = "study.querydsl.entity.Team";
+
+    private final EntityManagerFactory emf;
+
+    public boolean contains(Long teamId) {
+        return emf.getCache().contains(Team.class, teamId);
+    }
+
+    public void evict(Long teamId) {
+        emf.getCache().evict(Team.class, teamId);
+    }
+
+    public void evictAll() {
+        org.hibernate.Cache cache = sessionFactory().getCache();
+        cache.evictEntityData(Team.class);
+        cache.evictDefaultQueryRegion();
+    }
+
+    public CacheRegionStatistics teamStatistics() {
+        return sessionFactory().getStatistics().getDomainDataRegionStatistics(TEAM_REGION);
+    }
+
+    public CacheRegionStatistics queryStatistics() {
+        return sessionFactory().getStatistics()
+                .getQueryRegionStatistics(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+    }
+
+    private SessionFactory sessionFactory() {
+        return emf.unwrap(SessionFactory.class);
+    }
+}
@@ -0,0 +1,17 @@
+package study.querydsl.repository;
+
+/**
+ * Member 엔티티를 반환하는 쿼리에서 member.team 을 어떻게 가져올지
+ */
+public enum TeamFetch {
+
+    /**
+     * 지연로딩. 처음 접근할 때 같은 영속성 컨텍스트의 팀 프록시들을 in 쿼리로 묶어서 초기화한다 (@BatchSize)
+     */
+    BATCH,
+
+    /**
+     * fetch join 으로 회원과 같은 쿼리에서 가져온다. 팀을 반드시 쓰는 화면에 사용
+     */
+    JOIN
+}
@@ -0,0 +1,20 @@
+package study.querydsl.repository;
+
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import study.querydsl.entity.Team;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+
+public interface TeamRepository extends JpaRepository<Team,Long> {
+
+    //팀 이름은 유일하지 않으므로 id 목록. 쿼리 캐시에 올라가고 team 테이블이 바뀌면 무효화된다
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
+    @Query("select t.id from Team t where t.name = :name")
+    List<Long> findIdsByName(@Param("name") String name);
+
+}
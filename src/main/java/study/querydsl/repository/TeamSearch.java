@@ -0,0 +1,35 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
+import study.querydsl.entity.QTeam;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * teamName 조건 (회원 검색을 하는 리포지토리는 모두 이걸 쓴다)
+ *
+ * left join 한 team 의 컬럼으로 거르면 member 를 먼저 다 읽어야 하므로,
+ * idx_team_name 으로 팀 id 를 찾는 서브쿼리로 member.team_id 를 거른다.
+ * - team 조인을 참조하지 않아서 카운트 쿼리에서 조인이 빠진다
+ * - 팀 이름은 바인드 파라미터 하나라서 MemberSearchQueryCache 의 쿼리 모양이 그대로 재사용된다
+ * - 서브쿼리라서 벌크 update/delete 와 UNION ALL 에도 그대로 쓸 수 있고, 팀 조회 왕복이 따로 없다
+ */
+final class TeamSearch {
+
+    private static final QTeam teamByName = new QTeam("teamByName");
+
+    private TeamSearch() {
+    }
+
+    static BooleanExpression nameEq(String teamName) {
+        if (!hasText(teamName)) {
+            return null;
+        }
+        return member.team.id.in(JPAExpressions
+                .select(teamByName.id)
+                .from(teamByName)
+                .where(teamByName.name.eq(teamName)));
+    }
+}
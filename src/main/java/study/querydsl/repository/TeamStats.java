@@ -0,0 +1,439 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 팀별 회원 수, 나이 합/평균/최소/최대를 메모리에 들고 있다가 O(팀 수)로 돌려준다 (/teams/stats)
+ *
+ * Member/Team 의 insert, update(changeTeam 포함), delete 를 Hibernate 커밋 후 이벤트로 받아서 바로 반영하므로
+ * 롤백된 변경은 반영되지 않는다. 최소/최대는 삭제에도 맞도록 팀마다 나이별 인원수(TreeMap)로 들고 있다.
+ * 같은 나이별 인원수로 검색 결과 건수도 추정한다 ({@link #estimateMembers}, CountMode.ESTIMATED).
+ * 팀이 없는 회원은 키가 null 인 항목에 모으고 snapshot 에는 넣지 않는다.
+ *
+ * 벌크 update/delete(execute())는 이벤트가 없으므로 {@link #rebuildAfterCommit()} 로 전체를 다시 계산한다.
+ * 다시 계산하는 동안 들어온 변경은 모아뒀다가 계산이 끝나면 적용한다. 변경마다 받은 순서대로 번호를 매기고
+ * 팀/회원을 읽기 직전의 번호를 기록해서, 그보다 먼저 받은 변경(이미 커밋되어 읽은 값에 포함됨)은 버린다.
+ * DB 커밋과 이벤트 사이의 아주 짧은 틈에 읽기가 시작되면 한번 더 셀 수 있는데,
+ * 이런 오차는 member.team-stats.rebuild-interval 마다 전체를 다시 계산해서 바로잡는다.
+ */
+@Slf4j
+@Component
+public class TeamStats {
+
+    private final EntityManagerFactory emf;
+    private final Duration rebuildInterval;
+    private final ScheduledExecutorService rebuilder =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("team-stats-"));
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final Object rebuildLock = new Object();
+
+    //아래 필드는 this 로 동기화
+    private Map<Long, TeamAges> teams = new HashMap<>();
+    private boolean ready; // 처음 계산이 끝나기 전에는 변경을 무시한다 (계산에 포함됨)
+    private List<PendingChange> pending; // 다시 계산하는 중에 들어온 변경
+    private long sequence; // 지금까지 받은 변경 수 (변경의 순서 번호)
+
+    public TeamStats(EntityManagerFactory emf, @Value("${member.team-stats.rebuild-interval:10m}") Duration rebuildInterval) {
+        this.emf = emf;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        CommitListener listener = new CommitListener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRebuildJob() {
+        long intervalMillis = rebuildInterval.toMillis();
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 팀 id 순서. 아직 처음 계산이 끝나지 않았으면 빈 목록
+     */
+    public synchronized List<TeamStatsDto> snapshot() {
+        List<TeamStatsDto> result = new ArrayList<>(teams.size());
+        teams.forEach((teamId, ages) -> {
+            if (teamId != null) {
+                result.add(ages.toDto(teamId));
+            }
+        });
+        result.sort(Comparator.comparing(TeamStatsDto::getTeamId));
+        return result;
+    }
+
+    /**
+     * 팀과 나이 범위에 맞는 회원 수. 커밋된 변경까지만 반영되어 있으므로 추정치로 쓴다
+     *
+     * @param teamIds null 이면 모든 회원 (팀이 없는 회원 포함)
+     * @return 아직 처음 계산이 끝나지 않았으면 empty
+     */
+    public synchronized OptionalLong estimateMembers(Collection<Long> teamIds, Integer ageGoe, Integer ageLoe) {
+        if (!ready) {
+            return OptionalLong.empty();
+        }
+        long members = 0;
+        if (teamIds == null) {
+            for (TeamAges ages : teams.values()) {
+                members += ages.count(ageGoe, ageLoe);
+            }
+        } else {
+            for (Long teamId : teamIds) {
+                TeamAges ages = teams.get(teamId);
+                members += ages != null ? ages.count(ageGoe, ageLoe) : 0;
+            }
+        }
+        return OptionalLong.of(members);
+    }
+
+    /**
+     * 현재 트랜잭션이 커밋되면 (트랜잭션이 없으면 바로) 백그라운드에서 전체를 다시 계산한다.
+     * 이미 요청된 계산이 시작 전이면 하나로 합친다.
+     */
+    public void rebuildAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            requestRebuild();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                requestRebuild();
+            }
+        });
+    }
+
+    private void requestRebuild() {
+        if (rebuildRequested.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuildQuietly);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("team stats rebuild failed", e);
+        }
+    }
+
+    /**
+     * DB 에서 (팀, 나이)별 인원수를 group by 로 읽어서 전체를 다시 계산한다. idx_member_team_age 만 읽는다.
+     */
+    public void rebuild() {
+        rebuild(() -> { });
+    }
+
+    //beforeLoad: 테스트에서 변경을 모으기 시작한 뒤 DB 를 읽기 전에 커밋을 끼워넣는다
+    void rebuild(Runnable beforeLoad) {
+        synchronized (rebuildLock) {
+            rebuildRequested.set(false);
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            beforeLoad.run();
+            Map<Long, TeamAges> loaded;
+            //[팀을 읽기 직전의 순서 번호, 회원을 읽기 직전의 순서 번호]
+            long[] loadedAt = new long[2];
+            try {
+                loaded = load(loadedAt);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pending = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                for (PendingChange change : pending) {
+                    if (change.sequence > loadedAt[change.member ? 1 : 0]) {
+                        change.change.accept(loaded);
+                    }
+                }
+                teams = loaded;
+                pending = null;
+                ready = true;
+            }
+        }
+    }
+
+    private Map<Long, TeamAges> load(long[] loadedAt) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            Map<Long, TeamAges> loaded = new HashMap<>();
+            loadedAt[0] = currentSequence();
+            for (Tuple tuple : queryFactory.select(team.id, team.name).from(team).fetch()) {
+                loaded.put(tuple.get(team.id), new TeamAges(tuple.get(team.name)));
+            }
+            loadedAt[1] = currentSequence();
+            List<Tuple> ageCounts = queryFactory
+                    .select(member.team.id, member.age, member.count())
+                    .from(member)
+                    .groupBy(member.team.id, member.age)
+                    .fetch();
+            for (Tuple tuple : ageCounts) {
+                loaded.computeIfAbsent(tuple.get(member.team.id), teamId -> new TeamAges(null))
+                        .add(tuple.get(member.age), tuple.get(member.count()));
+            }
+            return loaded;
+        } finally {
+            em.close();
+        }
+    }
+
+    private synchronized long currentSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param member 회원 변경이면 true, 팀 변경이면 false (다시 계산할 때 어느 읽기와 비교할지)
+     */
+    private synchronized void apply(boolean member, Consumer<Map<Long, TeamAges>> change) {
+        sequence++;
+        if (pending != null) {
+            pending.add(new PendingChange(sequence, member, change));
+        } else if (ready) {
+            change.accept(teams);
+        }
+    }
+
+    //컨텍스트를 닫지 않고 main 이 끝나는 실행(테스트 런처 등)에서도 JVM 이 종료되도록
+    private static ThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private static Long teamIdOf(Object team) {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    private static Object property(EntityPersister persister, Object[] state, String name) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(name)];
+    }
+
+    private static TeamAges teamAges(Map<Long, TeamAges> teams, Long teamId) {
+        return teams.computeIfAbsent(teamId, id -> new TeamAges(null));
+    }
+
+    private static void addMember(Map<Long, TeamAges> teams, Long teamId, int age) {
+        teamAges(teams, teamId).add(age, 1);
+    }
+
+    private static void removeMember(Map<Long, TeamAges> teams, Long teamId, int age) {
+        TeamAges ages = teams.get(teamId);
+        if (ages != null) {
+            ages.remove(age);
+        }
+    }
+
+    /**
+     * 커밋된 변경만 받는다 (롤백되면 *CommitFailed 가 불리고 아무것도 하지 않음)
+     */
+    private class CommitListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getState();
+            if (event.getEntity() instanceof Member) {
+                Long teamId = teamIdOf(property(persister, state, "team"));
+                int age = (Integer) property(persister, state, "age");
+                apply(true, teams -> addMember(teams, teamId, age));
+            } else if (event.getEntity() instanceof Team) {
+                Long teamId = (Long) event.getId();
+                String name = (String) property(persister, state, "name");
+                apply(false, teams -> teamAges(teams, teamId).name = name);
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            EntityPersister persister = event.getPersister();
+            Object[] oldState = event.getOldState();
+            Object[] state = event.getState();
+            if (oldState == null) {
+                //준영속 엔티티를 update 하는 등 이전 값을 모르면 다시 계산
+                requestRebuild();
+                return;
+            }
+            if (event.getEntity() instanceof Member) {
+                Long oldTeamId = teamIdOf(property(persister, oldState, "team"));
+                int oldAge = (Integer) property(persister, oldState, "age");
+                Long teamId = teamIdOf(property(persister, state, "team"));
+                int age = (Integer) property(persister, state, "age");
+                apply(true, teams -> {
+                    removeMember(teams, oldTeamId, oldAge);
+                    addMember(teams, teamId, age);
+                });
+            } else if (event.getEntity() instanceof Team) {
+                Long teamId = (Long) event.getId();
+                String name = (String) property(persister, state, "name");
+                apply(false, teams -> teamAges(teams, teamId).name = name);
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getDeletedState();
+            if (event.getEntity() instanceof Member) {
+                Long teamId = teamIdOf(property(persister, state, "team"));
+                int age = (Integer) property(persister, state, "age");
+                apply(true, teams -> removeMember(teams, teamId, age));
+            } else if (event.getEntity() instanceof Team) {
+                Long teamId = (Long) event.getId();
+                apply(false, teams -> teams.remove(teamId));
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation") // 5.x 에서는 아직 이 메서드로 물어본다 (requiresPostCommitHandling 의 기본 구현이 이걸 부른다)
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            Class<?> entityClass = persister.getMappedClass();
+            return entityClass == Member.class || entityClass == Team.class;
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+    }
+
+    private static class PendingChange {
+
+        private final long sequence;
+        private final boolean member;
+        private final Consumer<Map<Long, TeamAges>> change;
+
+        private PendingChange(long sequence, boolean member, Consumer<Map<Long, TeamAges>> change) {
+            this.sequence = sequence;
+            this.member = member;
+            this.change = change;
+        }
+    }
+
+    private static class TeamAges {
+
+        private String name;
+        private long count;
+        private long sum;
+        private final TreeMap<Integer, Long> ages = new TreeMap<>(); // 나이 -> 인원수
+
+        private TeamAges(String name) {
+            this.name = name;
+        }
+
+        private void add(int age, long members) {
+            count += members;
+            sum += (long) age * members;
+            ages.merge(age, members, Long::sum);
+        }
+
+        private void remove(int age) {
+            count--;
+            sum -= age;
+            ages.computeIfPresent(age, (key, members) -> members == 1 ? null : members - 1);
+        }
+
+        private long count(Integer ageGoe, Integer ageLoe) {
+            if (ageGoe == null && ageLoe == null) {
+                return count;
+            }
+            Map<Integer, Long> range;
+            if (ageGoe == null) {
+                range = ages.headMap(ageLoe, true);
+            } else if (ageLoe == null) {
+                range = ages.tailMap(ageGoe, true);
+            } else if (ageGoe > ageLoe) {
+                return 0;
+            } else {
+                range = ages.subMap(ageGoe, true, ageLoe, true);
+            }
+            long members = 0;
+            for (long ageMembers : range.values()) {
+                members += ageMembers;
+            }
+            return members;
+        }
+
+        private TeamStatsDto toDto(Long teamId) {
+            return new TeamStatsDto(teamId, name, count, sum,
+                    ages.isEmpty() ? null : ages.firstKey(),
+                    ages.isEmpty() ? null : ages.lastKey());
+        }
+    }
+}
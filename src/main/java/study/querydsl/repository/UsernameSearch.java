@@ -0,0 +1,86 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.jpa.JPAExpressions;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * usernameStartsWith / usernameContains 조건
+ *
+ * - startsWith: username_key like 'abc%' (idx_member_username_key 범위 검색)
+ * - contains: 검색어의 3글자 조각을 모두 가진 회원 id 를 idx_member_username_trigram 으로 찾고,
+ *   조각은 순서를 모르므로 username_key like '%abcd%' 로 한번 더 거른다.
+ *   3글자보다 짧으면 조각이 없어서 like 만으로 거른다 (인덱스 전체를 읽음)
+ *
+ * 검색어는 저장할 때와 같이 Member.usernameKeyOf 로 맞춘다
+ */
+final class UsernameSearch {
+
+    private static final char ESCAPE = '!';
+    private static final QMember trigramOwner = new QMember("trigramOwner");
+    private static final StringPath trigram = Expressions.stringPath("trigram");
+
+    private UsernameSearch() {
+    }
+
+    static BooleanExpression startsWith(String prefix) {
+        return hasText(prefix) ? member.usernameKey.like(prefixPattern(prefix), ESCAPE) : null;
+    }
+
+    static BooleanExpression contains(String text) {
+        if (!hasText(text)) {
+            return null;
+        }
+        BooleanExpression like = member.usernameKey.like(containsPattern(text), ESCAPE);
+        List<String> trigrams = trigramsOf(text);
+        return trigrams.isEmpty() ? like : like.and(member.id.in(JPAExpressions
+                .select(trigramOwner.id)
+                .from(trigramOwner)
+                .join(trigramOwner.usernameTrigrams, trigram)
+                .where(trigram.in(trigrams))
+                .groupBy(trigramOwner.id)
+                .having(trigram.count().eq((long) trigrams.size()))));
+    }
+
+    //trigram 인덱스를 쓰는지 (MemberSearchQueryCache 는 이 경우만 캐시한다)
+    static boolean indexedContains(String text) {
+        return hasText(text) && !trigramsOf(text).isEmpty();
+    }
+
+    static boolean hasCondition(String usernameStartsWith, String usernameContains) {
+        return hasText(usernameStartsWith) || hasText(usernameContains);
+    }
+
+    static String prefixPattern(String prefix) {
+        return escape(Member.usernameKeyOf(prefix)) + "%";
+    }
+
+    static String containsPattern(String text) {
+        return "%" + escape(Member.usernameKeyOf(text)) + "%";
+    }
+
+    static List<String> trigramsOf(String text) {
+        return new ArrayList<>(Member.trigramsOf(Member.usernameKeyOf(text)));
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
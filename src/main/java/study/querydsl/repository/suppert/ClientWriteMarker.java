@@ -0,0 +1,65 @@
+package study.querydsl.repository.suppert;
+
+import java.util.function.LongConsumer;
+
+/**
+ * 지금 처리 중인 요청의 클라이언트가 마지막으로 쓰기 트랜잭션을 커밋한 시각 (epoch millis)
+ *
+ * 요청을 받을 때 필터가 클라이언트에게서 받은 값(쿠키)으로 {@link #bind} 하고 요청이 끝나면 {@link #clear} 한다.
+ * 요청 안에서 쓰기를 커밋하면 {@link #written} 이 onWrite 로 새 시각을 클라이언트에게 돌려준다 (다음 요청에서 다시 받음).
+ * 스레드가 아니라 클라이언트에 묶이므로 요청마다 다른 스레드(가상 스레드 포함)에서 실행되어도 이어지고,
+ * 같은 스레드의 다음 요청이 다른 클라이언트 것이면 영향을 받지 않는다.
+ *
+ * 요청 밖(스케줄러, 배치 등)에서는 bind 된 값이 없으므로 방금 쓴 데이터를 primary 에서 읽는 보장도 없다.
+ */
+public final class ClientWriteMarker {
+
+    private static final ThreadLocal<ClientWriteMarker> CURRENT = new ThreadLocal<>();
+
+    private volatile long lastWriteMillis;
+    private final LongConsumer onWrite;
+
+    private ClientWriteMarker(long lastWriteMillis, LongConsumer onWrite) {
+        this.lastWriteMillis = lastWriteMillis;
+        this.onWrite = onWrite;
+    }
+
+    /**
+     * @param lastWriteMillis 클라이언트가 보낸 마지막 쓰기 시각, 없으면 0
+     * @param onWrite 요청 안에서 쓰기를 커밋한 시각을 클라이언트에게 돌려준다
+     */
+    public static void bind(long lastWriteMillis, LongConsumer onWrite) {
+        CURRENT.set(new ClientWriteMarker(lastWriteMillis, onWrite));
+    }
+
+    /**
+     * 같은 요청의 일을 다른 스레드에서 할 때 요청 스레드의 marker 를 그대로 건다 (null 이면 요청 밖)
+     */
+    public static void set(ClientWriteMarker marker) {
+        if (marker == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(marker);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 요청 밖이면 null
+     */
+    public static ClientWriteMarker current() {
+        return CURRENT.get();
+    }
+
+    public long lastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public void written(long millis) {
+        lastWriteMillis = millis;
+        onWrite.accept(millis);
+    }
+}
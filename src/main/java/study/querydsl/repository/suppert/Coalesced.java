@@ -0,0 +1,18 @@
+package study.querydsl.repository.suppert;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 같은 인자로 동시에 들어온 호출을 한번의 실행으로 합친다 ({@code SearchCoalescingAspect})
+ *
+ * 결과 객체를 여러 호출이 같이 쓰므로 DTO 를 돌려주는 조회 메서드에만 붙인다 (엔티티는 영속성 컨텍스트가 호출마다 다름).
+ * Spring Data 리포지토리는 커스텀 메서드도 리포지토리 프록시의 readOnly 트랜잭션 안에서 실행하므로
+ * 구현 클래스가 아니라 리포지토리 인터페이스 메서드에 붙여서 그 트랜잭션보다 바깥에서 합친다.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+}
@@ -0,0 +1,163 @@
+package study.querydsl.repository.suppert;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 페이징의 컨텐츠 쿼리와 카운트 쿼리를 동시에 실행한다 (member.paging.concurrent-count.enabled=true 일 때만)
+ *
+ * 카운트 쿼리는 별도 스레드에서 별도 EntityManager(별도 커넥션)로 실행하고, 호출 스레드는 그동안 컨텐츠 쿼리를 실행한다.
+ * 호출한 쪽이 readOnly 트랜잭션이면 카운트도 readOnly 트랜잭션으로 실행해서 같은 쪽(replica/primary)으로 간다.
+ * PageableExecutionUtils 가 카운트가 필요없다고 판단하면 카운트 작업은 취소한다.
+ * 카운트 생략 여부는 {@link QueryStats} 에 남긴다.
+ *
+ * 호출 스레드는 자기 커넥션을 잡은 채로 카운트를 기다리므로, 요청마다 커넥션이 두개 필요하다.
+ * 커넥션 풀이 모두 호출 스레드에 잡혀 있으면 카운트는 커넥션을 얻지 못하므로
+ * max-wait 까지만 기다리고 카운트 작업을 취소한 뒤 호출 스레드의 커넥션으로 직접 카운트한다.
+ * 카운트 전용 스레드 수도 커넥션 풀(spring.datasource.hikari.maximum-pool-size)의 1/4 을 넘지 않게 줄인다.
+ *
+ * 별도 커넥션은 현재 트랜잭션에서 아직 커밋하지 않은 변경을 볼 수 없으므로,
+ * 쓰기 트랜잭션 안에서는 기존처럼 같은 EntityManager 로 순서대로 실행한다.
+ */
+@Component
+public class ConcurrentCountExecutor {
+
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param em 트랜잭션에 묶이는 공유 EntityManager (카운트 스레드에서는 그 스레드의 트랜잭션에 묶인다)
+     */
+    public ConcurrentCountExecutor(EntityManager em, PlatformTransactionManager transactionManager,
+                                   @Value("${member.paging.concurrent-count.enabled:false}") boolean enabled,
+                                   @Value("${member.paging.concurrent-count.pool-size:4}") int poolSize,
+                                   @Value("${member.paging.concurrent-count.queue-size:100}") int queueSize,
+                                   @Value("${member.paging.concurrent-count.max-wait:500ms}") Duration maxWait,
+                                   @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.em = em;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.maxWaitNanos = maxWait.toNanos();
+        int threads = Math.max(1, Math.min(poolSize, connectionPoolSize / 4));
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("count-query-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param content 호출 스레드에서 실행할 컨텐츠 쿼리
+     * @param count   카운트 쿼리. 다른 스레드에서 실행될 수 있으므로 넘겨받은 EntityManager 로 쿼리를 복사(clone)해서 실행한다
+     */
+    public <T> Page<T> getPage(Supplier<List<T>> content, Pageable pageable, ToLongFunction<EntityManager> count) {
+        if (!isConcurrent()) {
+            return getPageSequential(content, pageable, count);
+        }
+
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        ClientWriteMarker marker = ClientWriteMarker.current();
+        Future<Long> future;
+        try {
+            future = executor.submit(() -> countOnOtherThread(count, readOnly, marker));
+        } catch (RejectedExecutionException e) {
+            //풀이 꽉 찼으면 기다리지 않고 순서대로 실행
+            return getPageSequential(content, pageable, count);
+        }
+
+        boolean[] counted = {false};
+        try {
+            return PageableExecutionUtils.getPage(content.get(), pageable, () -> {
+                counted[0] = true;
+                return await(future, count);
+            });
+        } finally {
+            if (!counted[0]) {
+                future.cancel(true);
+            }
+            QueryStats.countQuery(!counted[0]);
+        }
+    }
+
+    private <T> Page<T> getPageSequential(Supplier<List<T>> content, Pageable pageable, ToLongFunction<EntityManager> count) {
+        boolean[] counted = {false};
+        try {
+            return PageableExecutionUtils.getPage(content.get(), pageable, () -> {
+                counted[0] = true;
+                return count.applyAsLong(em);
+            });
+        } finally {
+            QueryStats.countQuery(!counted[0]);
+        }
+    }
+
+    private boolean isConcurrent() {
+        if (!enabled) {
+            return false;
+        }
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    //호출 스레드와 같은 트랜잭션 종류, 같은 클라이언트로 실행해서 커넥션을 같은 쪽으로 라우팅한다
+    private long countOnOtherThread(ToLongFunction<EntityManager> count, boolean readOnly, ClientWriteMarker marker) {
+        ClientWriteMarker.set(marker);
+        try {
+            if (readOnly) {
+                return readOnlyTransaction.execute(status -> count.applyAsLong(em));
+            }
+            //트랜잭션이 없으면 공유 EntityManager 가 쿼리마다 새 EntityManager 를 열고 닫는다
+            return count.applyAsLong(em);
+        } finally {
+            ClientWriteMarker.clear();
+        }
+    }
+
+    private long await(Future<Long> future, ToLongFunction<EntityManager> count) {
+        try {
+            return future.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            //커넥션을 기다리고 있을 수 있으므로 취소하고 호출 스레드의 커넥션으로 카운트
+            future.cancel(true);
+            return count.applyAsLong(em);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("카운트 쿼리를 기다리는 중 인터럽트 되었습니다", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,238 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.MapExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAQueryMixin;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 컨텐츠 쿼리로부터 가벼운 카운트 쿼리를 만들어준다.
+ *
+ * <ul>
+ *     <li>select 절은 count(countTarget) 하나로 바꾼다</li>
+ *     <li>order by, offset, limit 는 버린다</li>
+ *     <li>fetch join 은 일반 join 으로 바꾼다</li>
+ *     <li>where/having/다른 join 에서 참조하지 않는 to-one left join 은 결과 row 수에 영향이 없으므로 버린다</li>
+ * </ul>
+ *
+ * group by, having, distinct 가 있는 쿼리는 카운트 의미가 달라지므로 변환하지 않는다.
+ */
+public final class CountQueryDerivation {
+
+    private CountQueryDerivation() {
+    }
+
+    /**
+     * 변환 가능하면 파생된 카운트 쿼리로, 아니면 컨텐츠 쿼리의 fetchCount 로 카운트한다.
+     */
+    @SuppressWarnings("deprecation") // 변환할 수 없는 쿼리는 기존처럼 fetchCount 로 센다
+    public static LongSupplier countOf(JPAQueryFactory queryFactory, JPAQuery<?> contentQuery, Expression<?> countTarget) {
+        if (!isDerivable(contentQuery.getMetadata())) {
+            return contentQuery::fetchCount;
+        }
+        JPAQuery<Long> countQuery = derive(queryFactory, contentQuery, countTarget);
+        return () -> {
+            Long total = countQuery.fetchOne();
+            return total != null ? total : 0L;
+        };
+    }
+
+    /**
+     * countOf 와 같지만 실행할 EntityManager 를 나중에 받는다. 쿼리는 호출 시점에 복사해두므로
+     * 이후 컨텐츠 쿼리에 페이징을 적용하거나 다른 스레드에서 실행해도 서로 영향이 없다.
+     */
+    @SuppressWarnings("deprecation") // countOf 와 같음
+    public static ToLongFunction<EntityManager> detachedCountOf(JPAQueryFactory queryFactory, JPAQuery<?> contentQuery, Expression<?> countTarget) {
+        if (!isDerivable(contentQuery.getMetadata())) {
+            JPAQuery<?> snapshot = contentQuery.clone();
+            return em -> snapshot.clone(em).fetchCount();
+        }
+        JPAQuery<Long> countQuery = derive(queryFactory, contentQuery, countTarget);
+        return em -> {
+            Long total = countQuery.clone(em).fetchOne();
+            return total != null ? total : 0L;
+        };
+    }
+
+    public static JPAQuery<Long> derive(JPAQueryFactory queryFactory, JPAQuery<?> contentQuery, Expression<?> countTarget) {
+        QueryMetadata source = contentQuery.getMetadata();
+        if (!isDerivable(source)) {
+            throw new IllegalArgumentException("group by, having, distinct 가 있는 쿼리는 카운트 쿼리를 파생할 수 없습니다");
+        }
+
+        JPAQuery<Long> countQuery = queryFactory.select(Expressions.numberOperation(Long.class, Ops.AggOps.COUNT_AGG, countTarget));
+        QueryMetadata target = countQuery.getMetadata();
+
+        List<JoinExpression> joins = source.getJoins();
+        for (JoinExpression join : joins) {
+            if (isDroppable(join, referencedRoots(source, join))) {
+                continue;
+            }
+            target.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                target.addJoinCondition(join.getCondition());
+            }
+            for (JoinFlag flag : join.getFlags()) {
+                if (!flag.equals(JPAQueryMixin.FETCH) && !flag.equals(JPAQueryMixin.FETCH_ALL_PROPERTIES)) {
+                    target.addJoinFlag(flag);
+                }
+            }
+        }
+        if (source.getWhere() != null) {
+            target.addWhere(source.getWhere());
+        }
+        copyParams(source, target);
+        return countQuery;
+    }
+
+    private static boolean isDerivable(QueryMetadata metadata) {
+        return metadata.getGroupBy().isEmpty() && metadata.getHaving() == null && !metadata.isDistinct();
+    }
+
+    private static boolean isDroppable(JoinExpression join, Set<Expression<?>> referenced) {
+        if (join.getType() != JoinType.LEFTJOIN) {
+            return false;
+        }
+        Expression<?> association = join.getTarget();
+        Expression<?> alias = join.getTarget();
+        if (association instanceof Operation && ((Operation<?>) association).getOperator() == Ops.ALIAS) {
+            association = ((Operation<?>) association).getArg(0);
+            alias = ((Operation<?>) alias).getArg(1);
+        }
+        //연관관계 경로(member.team)만 대상. 루트 엔티티로 하는 세타 조인(leftJoin(team).on(...))은 row 가 늘어날 수 있다
+        if (!(association instanceof Path) || ((Path<?>) association).getMetadata().getParent() == null) {
+            return false;
+        }
+        //to-many 조인은 row 수를 바꾼다
+        if (association instanceof CollectionExpression || association instanceof MapExpression) {
+            return false;
+        }
+        return !referenced.contains(alias);
+    }
+
+    /**
+     * skip 을 제외한 나머지 절(where, having, 다른 join)에서 참조하는 경로의 루트들
+     */
+    private static Set<Expression<?>> referencedRoots(QueryMetadata metadata, JoinExpression skip) {
+        Set<Expression<?>> roots = new HashSet<>();
+        if (metadata.getWhere() != null) {
+            metadata.getWhere().accept(RootCollector.INSTANCE, roots);
+        }
+        if (metadata.getHaving() != null) {
+            metadata.getHaving().accept(RootCollector.INSTANCE, roots);
+        }
+        for (JoinExpression join : metadata.getJoins()) {
+            if (join == skip) {
+                continue;
+            }
+            Expression<?> target = join.getTarget();
+            if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+                ((Operation<?>) target).getArg(0).accept(RootCollector.INSTANCE, roots);
+            }
+            if (join.getCondition() != null) {
+                join.getCondition().accept(RootCollector.INSTANCE, roots);
+            }
+        }
+        return roots;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void copyParams(QueryMetadata source, QueryMetadata target) {
+        for (Map.Entry<ParamExpression<?>, Object> param : source.getParams().entrySet()) {
+            target.setParam((ParamExpression) param.getKey(), param.getValue());
+        }
+    }
+
+    private static final class RootCollector implements Visitor<Void, Set<Expression<?>>> {
+
+        private static final RootCollector INSTANCE = new RootCollector();
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Expression<?>> roots) {
+            for (Expression<?> arg : expr.getArgs()) {
+                arg.accept(this, roots);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Expression<?>> roots) {
+            for (Expression<?> arg : expr.getArgs()) {
+                arg.accept(this, roots);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<Expression<?>> roots) {
+            roots.add(expr.getRoot());
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Expression<?>> roots) {
+            //서브쿼리는 상관관계가 있을 수 있으니 안에서 쓰는 경로를 모두 참조로 본다
+            QueryMetadata metadata = expr.getMetadata();
+            if (metadata.getWhere() != null) {
+                metadata.getWhere().accept(this, roots);
+            }
+            if (metadata.getHaving() != null) {
+                metadata.getHaving().accept(this, roots);
+            }
+            if (metadata.getProjection() != null) {
+                metadata.getProjection().accept(this, roots);
+            }
+            for (JoinExpression join : metadata.getJoins()) {
+                join.getTarget().accept(this, roots);
+                if (join.getCondition() != null) {
+                    join.getCondition().accept(this, roots);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Expression<?>> roots) {
+            for (Object arg : expr.getArgs()) {
+                if (arg instanceof Expression) {
+                    ((Expression<?>) arg).accept(this, roots);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package study.querydsl.repository.suppert;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * DTO 클래스 하나의 생성자/setter/필드 접근자. {@link FastProjections} 가 쓴다.
+ *
+ * 리플렉션은 접근자를 처음 만들 때만 쓰고, 기본 생성자와 setter 는 LambdaMetafactory 로 만든 람다,
+ * 필드와 인자 있는 생성자는 MethodHandle 로 호출한다. 만든 접근자는 클래스별로(ClassValue) 캐시한다.
+ */
+final class DtoAccessors {
+
+    private static final ClassValue<DtoAccessors> CACHE = new ClassValue<DtoAccessors>() {
+        @Override
+        protected DtoAccessors computeValue(Class<?> type) {
+            return new DtoAccessors(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final MethodHandles.Lookup lookup;
+    private volatile Supplier<Object> noArgsConstructor;
+    private final Map<String, BiConsumer<Object, Object>> setters = new ConcurrentHashMap<>();
+    private final Map<String, BiConsumer<Object, Object>> fieldSetters = new ConcurrentHashMap<>();
+    private final Map<List<Class<?>>, MethodHandle> constructors = new ConcurrentHashMap<>();
+
+    private DtoAccessors(Class<?> type) {
+        this.type = type;
+        try {
+            this.lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("cannot access " + type.getName(), e);
+        }
+    }
+
+    static DtoAccessors of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    Supplier<Object> noArgsConstructor() {
+        Supplier<Object> constructor = noArgsConstructor;
+        if (constructor == null) {
+            constructor = createNoArgsConstructor();
+            noArgsConstructor = constructor;
+        }
+        return constructor;
+    }
+
+    /**
+     * setXxx(값) 을 호출하는 람다 (null 은 넘기지 않는다)
+     */
+    BiConsumer<Object, Object> setter(String property) {
+        return setters.computeIfAbsent(property, this::createSetter);
+    }
+
+    /**
+     * 필드에 직접 넣는다 (private 필드 포함, 상위 클래스 필드 포함)
+     */
+    BiConsumer<Object, Object> fieldSetter(String field) {
+        return fieldSetters.computeIfAbsent(field, this::createFieldSetter);
+    }
+
+    /**
+     * 인자 타입에 맞는 생성자를 (Object[])Object 모양으로 바꾼 MethodHandle. invokeExact 로 호출한다
+     */
+    MethodHandle constructor(List<Class<?>> argTypes) {
+        return constructors.computeIfAbsent(argTypes, this::createConstructor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<Object> createNoArgsConstructor() {
+        try {
+            MethodHandle impl = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    impl,
+                    MethodType.methodType(type));
+            return (Supplier<Object>) site.getTarget().invoke();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no default constructor", e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create constructor of " + type.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiConsumer<Object, Object> createSetter(String property) {
+        Method setter = findSetter(property);
+        try {
+            MethodHandle impl = lookup.unreflect(setter);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    impl,
+                    MethodType.methodType(void.class, setter.getDeclaringClass(), wrap(setter.getParameterTypes()[0])));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create setter for " + type.getName() + "." + property, e);
+        }
+    }
+
+    private Method findSetter(String property) {
+        String name = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(type.getName() + " has no setter for " + property);
+    }
+
+    private BiConsumer<Object, Object> createFieldSetter(String name) {
+        Field field = findField(name);
+        MethodHandle setter;
+        try {
+            setter = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                    .unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("cannot access " + type.getName() + "." + name, e);
+        }
+        return (bean, value) -> {
+            try {
+                setter.invokeExact(bean, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private Field findField(String name) {
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+                    return field;
+                }
+            }
+        }
+        throw new IllegalArgumentException(type.getName() + " has no field " + name);
+    }
+
+    private MethodHandle createConstructor(List<Class<?>> argTypes) {
+        Constructor<?> constructor = Arrays.stream(type.getDeclaredConstructors())
+                .filter(candidate -> accepts(candidate.getParameterTypes(), argTypes))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(type.getName() + " has no constructor for " + argTypes));
+        try {
+            return lookup.unreflectConstructor(constructor)
+                    .asType(MethodType.genericMethodType(argTypes.size()))
+                    .asSpreader(Object[].class, argTypes.size());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("cannot access constructor of " + type.getName(), e);
+        }
+    }
+
+    private static boolean accepts(Class<?>[] parameterTypes, List<Class<?>> argTypes) {
+        if (parameterTypes.length != argTypes.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!wrap(parameterTypes[i]).isAssignableFrom(wrap(argTypes.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+}
@@ -0,0 +1,42 @@
+package study.querydsl.repository.suppert;
+
+/**
+ * 현재 스레드에서 일어난 쿼리 관련 수치. 리포지토리 메트릭({@code RepositoryMetricsAspect})이 호출 전후로 읽는다.
+ *
+ * 스레드 로컬이므로 다른 스레드(동시 카운트 쿼리 등)에서 실행된 statement 는 포함되지 않는다.
+ */
+public final class QueryStats {
+
+    private static final ThreadLocal<long[]> STATEMENTS = ThreadLocal.withInitial(() -> new long[1]);
+    private static final ThreadLocal<Boolean> COUNT_SKIPPED = new ThreadLocal<>();
+
+    private QueryStats() {
+    }
+
+    /**
+     * 이 스레드에서 지금까지 실행한 JDBC statement 수 (계속 증가만 하므로 전후 차이로 사용)
+     */
+    public static long statements() {
+        return STATEMENTS.get()[0];
+    }
+
+    static void statementExecuted() {
+        STATEMENTS.get()[0]++;
+    }
+
+    /**
+     * 페이징에서 카운트 쿼리를 실행했는지 생략했는지 기록
+     */
+    public static void countQuery(boolean skipped) {
+        COUNT_SKIPPED.set(skipped);
+    }
+
+    /**
+     * 마지막으로 기록된 카운트 생략 여부를 꺼내고 지운다. 기록이 없으면 null
+     */
+    public static Boolean pollCountSkipped() {
+        Boolean skipped = COUNT_SKIPPED.get();
+        COUNT_SKIPPED.remove();
+        return skipped;
+    }
+}
@@ -4,16 +4,17 @@ import com.mysema.commons.lang.Assert;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
-import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -21,6 +22,8 @@ import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
  * Querydsl 4.x 버전에 맞춘 Querydsl 지원 라이브러리
@@ -37,6 +40,8 @@ public abstract class Querydsl4RepositorySupport {
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private Expression<?> countTarget;
+    private ConcurrentCountExecutor countExecutor;
 
     public Querydsl4RepositorySupport(Class<?> domainClass) {
         Assert.notNull(domainClass, "Domain class must not be null!");
@@ -56,6 +61,14 @@ public abstract class Querydsl4RepositorySupport {
         this.querydsl = new Querydsl(entityManager, new
                 PathBuilder<>(path.getType(), path.getMetadata()));
         this.queryFactory = new JPAQueryFactory(entityManager);
+        this.countTarget = entityInformation.getIdAttribute() != null
+                ? new PathBuilder<>(path.getType(), path.getMetadata()).get(entityInformation.getIdAttribute().getName())
+                : path;
+    }
+
+    @Autowired
+    public void setCountExecutor(ConcurrentCountExecutor countExecutor) {
+        this.countExecutor = countExecutor;
     }
 
     @PostConstruct
@@ -63,6 +76,7 @@ public abstract class Querydsl4RepositorySupport {
         Assert.notNull(entityManager, "EntityManager must not be null!");
         Assert.notNull(querydsl, "Querydsl must not be null!");
         Assert.notNull(queryFactory, "QueryFactory must not be null!");
+        Assert.notNull(countExecutor, "ConcurrentCountExecutor must not be null!");
     }
 
     protected JPAQueryFactory getQueryFactory() {
@@ -85,16 +99,40 @@ public abstract class Querydsl4RepositorySupport {
         return getQueryFactory().selectFrom(from);
     }
 
+    /**
+     * 컨텐츠 쿼리에서 order by, fetch join, 필요없는 left join 을 걷어낸 count(id) 쿼리를 만든다.
+     *
+     * @see CountQueryDerivation
+     */
+    protected LongSupplier deriveCount(JPAQuery<?> contentQuery) {
+        return CountQueryDerivation.countOf(getQueryFactory(), contentQuery, countTarget);
+    }
+
+    /**
+     * 카운트 쿼리는 컨텐츠 쿼리로부터 자동으로 만든다. 직접 작성해야 하면 아래 countQuery 를 받는 메서드를 사용한다.
+     * member.paging.concurrent-count.enabled 이면 카운트는 컨텐츠와 동시에 실행된다. ({@link ConcurrentCountExecutor})
+     * 읽기 전용 트랜잭션이면 컨텐츠 쿼리에 읽기 전용 힌트를 건다. ({@link ReadOnlyQuery})
+     */
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery) {
 
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+        ToLongFunction<EntityManager> countQuery =
+                CountQueryDerivation.detachedCountOf(getQueryFactory(), jpaQuery, countTarget);
 
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaQuery).fetch();
+        return countExecutor.getPage(() -> getQuerydsl().applyPagination(pageable,
+                ReadOnlyQuery.of(jpaQuery)).fetch(), pageable, countQuery);
+    }
+
+    /**
+     * 카운트 쿼리를 실행하지 않는 페이징. limit + 1 개를 조회해서 다음 페이지 여부(hasNext)만 알려준다. ({@link SliceQuery})
+     */
+    protected <T> Slice<T> applySlice(Pageable pageable,
+                                      Function<JPAQueryFactory, JPAQuery> contentQuery) {
 
-        return PageableExecutionUtils.getPage(content, pageable,
-                jpaQuery::fetchCount);
+        JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+        JPQLQuery<T> sorted = getQuerydsl().applySorting(pageable.getSort(), ReadOnlyQuery.of(jpaQuery));
+        return SliceQuery.fetchSlice(sorted, pageable);
     }
 
     protected <T> Page<T> applyPagination(Pageable pageable,
@@ -102,13 +140,9 @@ public abstract class Querydsl4RepositorySupport {
             JPAQuery> countQuery) {
 
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaContentQuery).fetch();
-
         JPAQuery countResult = countQuery.apply(getQueryFactory());
 
-        return PageableExecutionUtils.getPage(content, pageable,
-                countResult::fetchCount);
+        return countExecutor.getPage(() -> getQuerydsl().applyPagination(pageable,
+                ReadOnlyQuery.of(jpaContentQuery)).fetch(), pageable, em -> countResult.clone(em).fetchCount());
     }
 }
\ No newline at end of file
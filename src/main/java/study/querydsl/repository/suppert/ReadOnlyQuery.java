@@ -0,0 +1,37 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.jpa.impl.AbstractJPAQuery;
+import org.hibernate.FlushMode;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Query;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true)) 안에서 실행하는 조회 쿼리에
+ * org.hibernate.readOnly, FlushMode.MANUAL 힌트를 건다.
+ *
+ * 읽기 전용으로 로딩한 엔티티는 스냅샷을 만들지 않아 힙을 덜 쓰고, flush 때 변경감지 대상에서도 빠진다.
+ * 쓰기 트랜잭션에 참여한 경우에는 호출한 쪽이 결과를 수정하거나 자동 flush 를 기대할 수 있으므로 힌트를 걸지 않는다.
+ */
+public final class ReadOnlyQuery {
+
+    private ReadOnlyQuery() {
+    }
+
+    public static <Q extends AbstractJPAQuery<?, Q>> Q of(Q query) {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            query.setHint(QueryHints.READ_ONLY, true)
+                    .setHint(QueryHints.FLUSH_MODE, FlushMode.MANUAL);
+        }
+        return query;
+    }
+
+    public static <T extends Query> T of(T query) {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            query.setHint(QueryHints.READ_ONLY, true);
+            query.setHint(QueryHints.FLUSH_MODE, FlushMode.MANUAL);
+        }
+        return query;
+    }
+}
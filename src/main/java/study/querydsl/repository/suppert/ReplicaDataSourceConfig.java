@@ -0,0 +1,43 @@
+package study.querydsl.repository.suppert;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * member.datasource.replica.enabled=true 이면 spring.datasource 를 primary, member.datasource.replica 를 replica 로 하는
+ * {@link ReplicaRoutingDataSource} 를 DataSource 로 쓴다. (false 면 스프링 부트 기본 DataSource 하나만 쓴다)
+ *
+ * 커넥션 풀 두개를 이 빈 안에서 만들고 닫으므로 DataSource 빈은 하나다 (p6spy 가 statement 를 두번 세지 않음).
+ */
+@Configuration
+@ConditionalOnProperty(name = "member.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+                                               @Value("${member.datasource.replica.url}") String replicaUrl,
+                                               @Value("${member.datasource.replica.username:${spring.datasource.username:}}") String replicaUsername,
+                                               @Value("${member.datasource.replica.password:${spring.datasource.password:}}") String replicaPassword,
+                                               @Value("${member.datasource.replica.max-lag:1s}") Duration maxLag) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        replica.setPoolName("replica");
+
+        return new ReplicaRoutingDataSource(primary, replica, maxLag);
+    }
+}
@@ -0,0 +1,103 @@
+package study.querydsl.repository.suppert;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * readOnly 트랜잭션은 replica, 그 외(쓰기 트랜잭션, 트랜잭션 없음)는 primary 커넥션을 쓴다
+ *
+ * 트랜잭션을 시작할 때가 아니라 첫 쿼리를 실행할 때 실제 커넥션을 가져오므로 (LazyConnectionDataSourceProxy)
+ * {@code @Transactional(readOnly = true)} 가 정해진 뒤에 어느 쪽을 쓸지 고른다.
+ *
+ * replica 는 primary 보다 늦게 반영될 수 있다. 같은 클라이언트가 쓰기 트랜잭션을 커밋하고 maxLag 가 지나기 전에는
+ * 그 클라이언트의 readOnly 트랜잭션도 primary 를 써서 방금 저장한 데이터를 바로 조회할 수 있게 한다.
+ * 마지막 쓰기 시각은 요청마다 {@link ClientWriteMarker} 로 받고 돌려준다 (웹 요청에서는 ReadYourWritesFilter 의 쿠키).
+ * 시각은 서버끼리 비교하므로 인스턴스 간 시계 차이가 maxLag 보다 충분히 작아야 한다.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    public enum Target {PRIMARY, REPLICA}
+
+    private final Map<Target, DataSource> targets = new EnumMap<>(Target.class);
+    private final long maxLagMillis;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration maxLag) {
+        this.targets.put(Target.PRIMARY, primary);
+        this.targets.put(Target.REPLICA, replica);
+        this.maxLagMillis = maxLag.toMillis();
+
+        AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return currentTarget();
+            }
+        };
+        router.setTargetDataSources(new HashMap<>(targets));
+        router.setDefaultTargetDataSource(primary);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+        afterPropertiesSet();
+    }
+
+    /**
+     * 지금 커넥션을 가져오면 쓰게 될 쪽
+     */
+    public Target currentTarget() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                recordWriteOnCommit();
+            }
+            return Target.PRIMARY;
+        }
+        return readOnlyTarget();
+    }
+
+    /**
+     * 지금 readOnly 트랜잭션을 시작하면 쓰게 될 쪽 (이 클라이언트가 maxLag 안에 쓰기를 커밋했으면 primary)
+     */
+    public Target readOnlyTarget() {
+        ClientWriteMarker marker = ClientWriteMarker.current();
+        if (marker != null && System.currentTimeMillis() - marker.lastWriteMillis() < maxLagMillis) {
+            return Target.PRIMARY;
+        }
+        return Target.REPLICA;
+    }
+
+    private void recordWriteOnCommit() {
+        ClientWriteMarker marker = ClientWriteMarker.current();
+        if (marker == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            marker.written(System.currentTimeMillis());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    marker.written(System.currentTimeMillis());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataSource dataSource : targets.values()) {
+            if (dataSource instanceof Closeable) {
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+}
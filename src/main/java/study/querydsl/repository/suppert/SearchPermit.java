@@ -0,0 +1,88 @@
+package study.querydsl.repository.suppert;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 지금 요청이 잡고 있는 회원 검색 벌크헤드 자리 ({@code MemberSearchBulkhead})
+ *
+ * 먼저 실행 중인 같은 검색의 결과를 기다리는 동안({@code SearchCoalescingAspect})은 DB 를 쓰지 않으므로 자리를 돌려주고,
+ * 기다리다가 직접 실행하게 되면 다시 받는다. 다시 받지 못하면 {@link Rejected} 를 던지고 벌크헤드가 503 으로 돌려준다.
+ * 결과를 나눠받은 뒤에는 자리 없이 응답을 마저 만든다.
+ *
+ * 벌크헤드 밖(다른 URL, 스케줄러 등)에서는 {@link #current()} 가 null 이다.
+ */
+public final class SearchPermit {
+
+    private static final ThreadLocal<SearchPermit> CURRENT = new ThreadLocal<>();
+
+    private final Semaphore semaphore;
+    private final long maxWaitNanos;
+    private boolean held = true;
+
+    private SearchPermit(Semaphore semaphore, long maxWaitNanos) {
+        this.semaphore = semaphore;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * semaphore 에서 자리를 받은 뒤 요청 스레드에 건다
+     *
+     * @param maxWait 돌려준 자리를 다시 받을 때 기다리는 최대 시간
+     */
+    public static SearchPermit bind(Semaphore semaphore, Duration maxWait) {
+        SearchPermit permit = new SearchPermit(semaphore, maxWait.toNanos());
+        CURRENT.set(permit);
+        return permit;
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 벌크헤드 밖이면 null
+     */
+    public static SearchPermit current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 잡고 있으면 돌려준다
+     */
+    public void release() {
+        if (held) {
+            held = false;
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 돌려준 자리를 다시 받는다
+     *
+     * @throws Rejected maxWait 안에 자리가 나지 않음
+     */
+    public void reacquire() {
+        if (held) {
+            return;
+        }
+        try {
+            held = semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!held) {
+            throw new Rejected();
+        }
+    }
+
+    public static class Rejected extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public Rejected() {
+            super("too many concurrent member searches");
+        }
+    }
+}
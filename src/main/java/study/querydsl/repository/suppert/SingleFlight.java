@@ -0,0 +1,77 @@
+package study.querydsl.repository.suppert;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 같은 키로 동시에 들어온 호출은 먼저 온 하나(leader)만 실행하고 나머지는 그 결과(예외 포함)를 같이 받는다.
+ *
+ * 실행이 끝나면 키를 지우므로 결과를 캐시하지는 않는다 (끝난 뒤에 들어온 호출은 새로 실행).
+ * 기다리는 쪽은 maxWait 이 지나면 더 기다리지 않고 직접 실행한다.
+ */
+public class SingleFlight<K, V> {
+
+    public enum Role {
+        LEADER, // 직접 실행
+        COALESCED, // 다른 호출의 결과를 받음
+        TIMEOUT // 기다리다가 직접 실행
+    }
+
+    public interface Call<V> {
+        V call() throws Throwable;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param onRole 이 호출이 어떻게 처리됐는지 (메트릭용)
+     */
+    public V execute(K key, Duration maxWait, Call<V> call, Consumer<Role> onRole) throws Throwable {
+        return execute(key, maxWait, call, onRole, () -> { });
+    }
+
+    /**
+     * @param onWait 다른 호출의 결과를 기다리기 직전에 (기다리는 동안 필요없는 자원을 돌려줄 때)
+     */
+    public V execute(K key, Duration maxWait, Call<V> call, Consumer<Role> onRole, Runnable onWait) throws Throwable {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, flight);
+        if (running == null) {
+            onRole.accept(Role.LEADER);
+            try {
+                V result = call.call();
+                flight.complete(result);
+                return result;
+            } catch (Throwable e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                calls.remove(key, flight);
+            }
+        }
+        onWait.run();
+        try {
+            V result = running.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            onRole.accept(Role.COALESCED);
+            return result;
+        } catch (ExecutionException e) {
+            onRole.accept(Role.COALESCED);
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            onRole.accept(Role.TIMEOUT);
+            return call.call();
+        }
+    }
+
+    /**
+     * 지금 실행 중인 키 수
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+}
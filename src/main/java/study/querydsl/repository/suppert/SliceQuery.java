@@ -0,0 +1,37 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.jpa.JPQLQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+/**
+ * 카운트 쿼리 없는 페이징 (무한 스크롤)
+ *
+ * pageSize + 1 개를 가져와서 한 개가 더 있으면 다음 페이지가 있다고 보고 그 한 개는 버린다.
+ */
+public final class SliceQuery {
+
+    private SliceQuery() {
+    }
+
+    /**
+     * query 에 offset, limit 를 걸어서 실행한다 (정렬은 호출하는 쪽에서)
+     */
+    public static <T> Slice<T> fetchSlice(JPQLQuery<T> query, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.fetch(), pageable, false);
+        }
+        List<T> content = query
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize() + 1L)
+                .fetch();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+}
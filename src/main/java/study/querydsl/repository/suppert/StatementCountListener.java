@@ -0,0 +1,19 @@
+package study.querydsl.repository.suppert;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * p6spy 로 감싼 DataSource 에서 실행되는 statement 를 스레드별로 센다 (로깅 설정과 무관하게 동작)
+ */
+@Component
+public class StatementCountListener extends SimpleJdbcEventListener {
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        QueryStats.statementExecuted();
+    }
+}
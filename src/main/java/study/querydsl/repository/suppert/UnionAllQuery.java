@@ -0,0 +1,192 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionUtils;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.spi.PositionalParameterInformation;
+import org.hibernate.hql.spi.QueryTranslator;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 여러 Querydsl 쿼리를 UNION ALL 로 묶어서 한 번의 statement 로 실행하고 결과를 쿼리별로 나눠준다.
+ *
+ * JPQL 에는 UNION 이 없으므로 각 쿼리의 JPQL 을 Hibernate 가 만든 SQL 로 바꿔서
+ * select 0 as union_index, q0.* from (쿼리0) q0 union all select 1, q1.* from (쿼리1) q1 ... 로 합친다.
+ * 쿼리마다 자기 where 절로 실행되므로 각자 인덱스를 그대로 탄다 (조건을 or 로 합친 쿼리는 인덱스를 못 타기 쉽다).
+ *
+ * - 프로젝션은 DTO(FactoryExpression)나 값 하나. 결과는 native 쿼리의 컬럼 타입 그대로 넘긴다 (H2 bigint -> Long 등)
+ * - offset/limit 은 SQL 에 들어가지 않으므로 쓸 수 없고, 쿼리별 결과의 순서는 보장하지 않는다
+ */
+public final class UnionAllQuery {
+
+    private UnionAllQuery() {
+    }
+
+    public static <T> List<List<T>> fetch(EntityManager em, List<? extends JPQLQuery<T>> queries) {
+        if (queries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        List<Expression<?>> projections = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            QueryMetadata metadata = queries.get(i).getMetadata();
+            if (metadata.getModifiers().isRestricting()) {
+                throw new IllegalArgumentException("offset/limit is not supported in union all: " + queries.get(i));
+            }
+            projections.add(metadata.getProjection() instanceof FactoryExpression
+                    ? FactoryExpressionUtils.wrap((FactoryExpression<?>) metadata.getProjection())
+                    : metadata.getProjection());
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            sql.append("select ").append(i).append(" as union_index, q").append(i).append(".* from (")
+                    .append(toSql(em, metadata, parameters))
+                    .append(") q").append(i);
+        }
+
+        Query query = em.createNativeQuery(sql.toString());
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        List<List<T>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(new ArrayList<>());
+        }
+        for (Object row : query.getResultList()) {
+            Object[] columns = (Object[]) row;
+            int index = ((Number) columns[0]).intValue();
+            results.get(index).add(toResult(projections.get(index), columns));
+        }
+        return results;
+    }
+
+    /**
+     * 쿼리 하나를 SQL 로 바꾸고 SQL 의 ? 순서대로 파라미터 값을 parameters 에 더한다.
+     * SQL 에서 ? 자리는 문자열 리터럴, 따옴표 식별자, 주석 안은 건너뛰고 찾는다. 둘의 개수가 다르면 실행하지 않는다.
+     * 컬렉션 파라미터 (in ?1) 는 SQL 에서 ? 하나로 나오므로 원소 개수만큼 ?, ?, ... 로 늘린다
+     */
+    private static String toSql(EntityManager em, QueryMetadata metadata, List<Object> parameters) {
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, false, null);
+        String jpql = serializer.toString();
+        List<Object> constants = serializer.getConstants();
+
+        QueryTranslator translator = translatorOf(em, jpql);
+
+        //SQL 의 ? 순서대로의 값. 각 ? 가 JPQL 의 몇번째 파라미터(?n)인지는 Hibernate 가 SQL 을 만들면서 모은 위치에서 가져온다
+        Map<Integer, PositionalParameterInformation> positions =
+                translator.getParameterTranslations().getPositionalParameterInformationMap();
+        if (!translator.getParameterTranslations().getNamedParameterInformationMap().isEmpty()) {
+            throw new IllegalArgumentException("named parameters are not supported: " + jpql);
+        }
+        int count = 0;
+        for (PositionalParameterInformation position : positions.values()) {
+            count += position.getSourceLocations().length;
+        }
+        Object[] values = new Object[count];
+        for (PositionalParameterInformation position : positions.values()) {
+            for (int location : position.getSourceLocations()) {
+                values[location] = constants.get(position.getLabel() - 1);
+            }
+        }
+
+        String sql = translator.getSQLString();
+        List<Integer> placeholders = placeholdersOf(sql);
+        if (placeholders.size() != values.length) {
+            throw new IllegalStateException("parameter count differs between Hibernate (" + values.length
+                    + ") and SQL (" + placeholders.size() + "): " + sql);
+        }
+        StringBuilder expanded = new StringBuilder(sql.length());
+        int copied = 0;
+        for (int i = 0; i < placeholders.size(); i++) {
+            int placeholder = placeholders.get(i);
+            expanded.append(sql, copied, placeholder);
+            copied = placeholder + 1;
+            Object value = values[i];
+            if (value instanceof Collection) {
+                Collection<?> elements = (Collection<?>) value;
+                expanded.append(String.join(", ", Collections.nCopies(elements.size(), "?")));
+                parameters.addAll(elements);
+            } else {
+                expanded.append('?');
+                parameters.add(value);
+            }
+        }
+        expanded.append(sql, copied, sql.length());
+        return expanded.toString();
+    }
+
+    /**
+     * JPQL 을 SQL 로 바꾼 Hibernate 의 번역기 (Hibernate 5 의 SPI, 6 에서는 없어지므로 올릴 때 다시 만들어야 한다).
+     * 쿼리 플랜 캐시를 거쳐서 같은 JPQL 은 다시 파싱하지 않는다
+     */
+    @SuppressWarnings("deprecation") // getQueryPlanCache: 5.x 에서 대체 API 가 없다
+    private static QueryTranslator translatorOf(EntityManager em, String jpql) {
+        HQLQueryPlan plan = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap());
+        QueryTranslator[] translators = plan.getTranslators();
+        if (translators.length != 1) {
+            throw new IllegalArgumentException("query is translated into multiple statements: " + jpql);
+        }
+        return translators[0];
+    }
+
+    /**
+     * SQL 에서 파라미터 자리 ? 의 위치. '...' 리터럴 ('' 는 이스케이프), "..." 식별자, -- 와 /* *&#47; 주석 안의 ? 는 빼고
+     */
+    static List<Integer> placeholdersOf(String sql) {
+        List<Integer> placeholders = new ArrayList<>();
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                //닫는 따옴표까지 (같은 따옴표 두개는 이스케이프이므로 계속)
+                int end = sql.indexOf(c, i + 1);
+                while (end >= 0 && end + 1 < length && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated quote in SQL: " + sql);
+                }
+                i = end;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated comment in SQL: " + sql);
+                }
+                i = end + 1;
+            } else if (c == '?') {
+                placeholders.add(i);
+            }
+        }
+        return placeholders;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T toResult(Expression<?> projection, Object[] columns) {
+        Object[] values = new Object[columns.length - 1];
+        System.arraycopy(columns, 1, values, 0, values.length);
+        if (projection instanceof FactoryExpression) {
+            return ((FactoryExpression<T>) projection).newInstance(values);
+        }
+        return (T) values[0];
+    }
+}
@@ -0,0 +1,44 @@
+package study.querydsl.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Collections;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//@AutoConfigureMockMvc 는 컨텍스트를 따로 띄우므로 (ddl-auto: create 로 스키마를 다시 만든다) 같은 컨텍스트에서 MockMvc 를 만든다
+@SpringBootTest
+class MemberControllerTest {
+
+    @Autowired
+    WebApplicationContext context;
+
+    MockMvc mockMvc;
+
+    @BeforeEach
+    public void before(){
+        mockMvc=MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void searchBatchBadRequest() throws Exception{
+
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content("[{}, null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content("null"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + String.join(",", Collections.nCopies(21, "{}")) + "]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content("[{}]"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,124 @@
+package study.querydsl.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import study.querydsl.repository.suppert.SearchPermit;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 스프링 컨텍스트 없이 필터만 확인한다
+ */
+class MemberSearchBulkheadTest {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ExecutorService clients = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void after(){
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void rejectWhenFull() throws Exception{
+
+        MemberSearchBulkhead bulkhead = new MemberSearchBulkhead(1, Duration.ofMillis(50), registry);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        //첫 요청이 자리를 잡고 있는 동안
+        Future<MockHttpServletResponse> slow = clients.submit(() -> filter(bulkhead, () -> {
+            entered.countDown();
+            release.await();
+        }));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(bulkhead.getActive()).isEqualTo(1);
+
+        //두번째 요청은 기다리다가 503
+        MockHttpServletResponse rejected = filter(bulkhead, () -> Assertions.fail("should not run"));
+        Assertions.assertThat(rejected.getStatus()).isEqualTo(503);
+        Assertions.assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+        Assertions.assertThat(registry.get("member.bulkhead.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        Assertions.assertThat(slow.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        Assertions.assertThat(bulkhead.getActive()).isZero();
+    }
+
+    @Test
+    public void waitForPermit() throws Exception{
+
+        MemberSearchBulkhead bulkhead = new MemberSearchBulkhead(1, Duration.ofSeconds(5), registry);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<MockHttpServletResponse> first = clients.submit(() -> filter(bulkhead, () -> {
+            entered.countDown();
+            release.await();
+        }));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<MockHttpServletResponse> second = clients.submit(() -> filter(bulkhead, () -> { }));
+
+        //자리가 나면 기다리던 요청이 실행된다
+        release.countDown();
+        Assertions.assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        Assertions.assertThat(second.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        Assertions.assertThat(registry.get("member.bulkhead.rejected").counter().count()).isZero();
+    }
+
+    @Test
+    public void rejectWhenReleasedPermitNotRegained() throws Exception{
+
+        MemberSearchBulkhead bulkhead = new MemberSearchBulkhead(1, Duration.ofMillis(50), registry);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch taken = new CountDownLatch(1);
+
+        //자리를 돌려주고 기다리는 사이에 다른 요청이 자리를 가져가면
+        Future<MockHttpServletResponse> waiting = clients.submit(() -> filter(bulkhead, () -> {
+            SearchPermit.current().release();
+            entered.countDown();
+            taken.await();
+            SearchPermit.current().reacquire();
+        }));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<MockHttpServletResponse> other = clients.submit(() -> filter(bulkhead, () -> {
+            taken.countDown();
+            release.await();
+        }));
+
+        //다시 받지 못한 요청은 503
+        MockHttpServletResponse rejected = waiting.get(5, TimeUnit.SECONDS);
+        Assertions.assertThat(rejected.getStatus()).isEqualTo(503);
+        Assertions.assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+        release.countDown();
+        Assertions.assertThat(other.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        Assertions.assertThat(bulkhead.getActive()).isZero();
+    }
+
+    private static MockHttpServletResponse filter(MemberSearchBulkhead bulkhead, Handler handler) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/members");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        bulkhead.doFilter(request, response, (req, res) -> {
+            try {
+                handler.handle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return response;
+    }
+
+    private interface Handler {
+        void handle() throws InterruptedException;
+    }
+}
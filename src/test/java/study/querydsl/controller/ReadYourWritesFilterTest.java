@@ -0,0 +1,55 @@
+package study.querydsl.controller;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import study.querydsl.repository.suppert.ClientWriteMarker;
+
+import javax.servlet.http.Cookie;
+import java.time.Duration;
+
+/**
+ * 스프링 컨텍스트 없이 필터만 확인한다
+ */
+class ReadYourWritesFilterTest {
+
+    ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofMillis(1500));
+
+    @Test
+    public void cookieRoundTrip() throws Exception{
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/members/import");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE_NAME, "1000"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        long[] seen = new long[1];
+
+        filter.doFilter(request, response, (req, res) -> {
+            ClientWriteMarker marker = ClientWriteMarker.current();
+            seen[0] = marker.lastWriteMillis();
+            //요청 안에서 쓰기 커밋
+            marker.written(2000);
+        });
+
+        Assertions.assertThat(seen[0]).isEqualTo(1000);
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        Assertions.assertThat(cookie.getValue()).isEqualTo("2000");
+        Assertions.assertThat(cookie.getMaxAge()).isEqualTo(2);
+        //요청이 끝나면 스레드에 남기지 않는다
+        Assertions.assertThat(ClientWriteMarker.current()).isNull();
+    }
+
+    @Test
+    public void noCookieNoWrite() throws Exception{
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/members");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE_NAME, "broken"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        long[] seen = {-1};
+
+        filter.doFilter(request, response, (req, res) -> seen[0] = ClientWriteMarker.current().lastWriteMillis());
+
+        Assertions.assertThat(seen[0]).isZero();
+        Assertions.assertThat(response.getCookie(ReadYourWritesFilter.COOKIE_NAME)).isNull();
+    }
+}
@@ -0,0 +1,117 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.CountedPage;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * ESTIMATED 는 커밋된 데이터로 계산한 TeamStats 를 쓰므로 트랜잭션을 직접 커밋하고 끝나면 지운다
+ */
+@SpringBootTest
+class CountModeTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    TeamStats teamStats;
+
+    TransactionTemplate transactionTemplate;
+    Long teamId;
+    MemberSearchCondition condition;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate=new TransactionTemplate(transactionManager);
+        teamStats.rebuild();
+        teamId=transactionTemplate.execute(status -> {
+            Team team=new Team("countModeTeam");
+            em.persist(team);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("countMode"+i,i*10,team));
+            }
+            return team.getId();
+        });
+        condition = new MemberSearchCondition();
+        condition.setTeamName("countModeTeam");
+        condition.setAgeGoe(20);
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> {
+            new JPAQueryFactory(em)
+                    .selectFrom(member)
+                    .where(member.team.id.eq(teamId))
+                    .fetch()
+                    .forEach(em::remove);
+            em.remove(em.find(Team.class, teamId));
+        });
+    }
+
+    @Test
+    public void exact() throws Exception{
+
+        CountedPage<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), CountMode.EXACT);
+
+        Assertions.assertThat(page.getContent()).hasSize(2);
+        Assertions.assertThat(page.getTotalElements()).isEqualTo(4);
+        Assertions.assertThat(page.isTotalExact()).isTrue();
+    }
+
+    @Test
+    public void estimated() throws Exception{
+
+        //팀별 나이별 인원수로 계산 (20살 이상 4명)
+        CountedPage<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), CountMode.ESTIMATED);
+        Assertions.assertThat(page.getContent()).hasSize(2);
+        Assertions.assertThat(page.getTotalElements()).isEqualTo(4);
+        Assertions.assertThat(page.isTotalExact()).isFalse();
+
+        //마지막 페이지는 컨텐츠로 전체 건수를 알 수 있으므로 정확하다
+        CountedPage<MemberTeamDto> last = memberRepository.searchPageComplex(condition, PageRequest.of(1, 3), CountMode.ESTIMATED);
+        Assertions.assertThat(last.getContent()).hasSize(1);
+        Assertions.assertThat(last.getTotalElements()).isEqualTo(4);
+        Assertions.assertThat(last.isTotalExact()).isTrue();
+
+        //username 조건은 선택도가 높아서 정확하게 센다
+        condition.setUsername("countMode3");
+        CountedPage<MemberTeamDto> byUsername = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), CountMode.ESTIMATED);
+        Assertions.assertThat(byUsername.getTotalElements()).isEqualTo(1);
+        Assertions.assertThat(byUsername.isTotalExact()).isTrue();
+    }
+
+    @Test
+    public void none() throws Exception{
+
+        CountedPage<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2), CountMode.NONE);
+        Assertions.assertThat(page.getContent()).hasSize(2);
+        Assertions.assertThat(page.hasNext()).isTrue();
+        Assertions.assertThat(page.isTotalExact()).isFalse();
+
+        CountedPage<MemberTeamDto> last = memberRepository.searchPageComplex(condition, PageRequest.of(1, 2), CountMode.NONE);
+        Assertions.assertThat(last.getContent()).hasSize(2);
+        Assertions.assertThat(last.hasNext()).isFalse();
+        Assertions.assertThat(last.getTotalElements()).isEqualTo(4);
+        Assertions.assertThat(last.isTotalExact()).isTrue();
+    }
+}
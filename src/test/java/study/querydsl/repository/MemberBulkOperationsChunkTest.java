@@ -0,0 +1,77 @@
+package study.querydsl.repository;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+//chunk 별 커밋을 보려면 바깥 트랜잭션이 없어야 하므로 @Transactional 을 붙이지 않고 직접 넣고 지운다
+@SpringBootTest
+class MemberBulkOperationsChunkTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TeamStats teamStats;
+    @Autowired
+    MemberReadModel readModel;
+
+    MemberBulkOperations bulkOperations;
+    TransactionTemplate tx;
+
+    @BeforeEach
+    public void before(){
+        bulkOperations=new MemberBulkOperations(em,transactionManager,teamStats,readModel,2);
+        tx=new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team team=new Team("chunkTeam");
+            em.persist(team);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("chunkMember"+i, i*10, team));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        tx.executeWithoutResult(status -> {
+            membersOfTeam().forEach(em::remove);
+            em.flush();
+            em.createQuery("delete from Team t where t.name = 'chunkTeam'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void failureKeepsCommittedChunks() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("chunkTeam");
+
+        //첫 chunk(2건)를 커밋한 뒤 실패
+        Assertions.assertThatThrownBy(() -> bulkOperations.bulkAgeAdd(condition, 1, processed -> {
+            throw new IllegalStateException("stop after " + processed);
+        })).hasMessage("stop after 2");
+
+        List<Integer> ages = tx.execute(status -> membersOfTeam().stream().map(Member::getAge)
+                .collect(Collectors.toList()));
+        Assertions.assertThat(ages).containsExactly(11, 21, 30, 40, 50);
+    }
+
+    private List<Member> membersOfTeam() {
+        return em.createQuery("select m from Member m where m.team.name = 'chunkTeam' order by m.id", Member.class)
+                .getResultList();
+    }
+}
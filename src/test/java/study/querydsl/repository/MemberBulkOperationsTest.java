@@ -0,0 +1,102 @@
+package study.querydsl.repository;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+@Transactional
+class MemberBulkOperationsTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TeamStats teamStats;
+    @Autowired
+    MemberReadModel readModel;
+
+    MemberBulkOperations bulkOperations;
+    Member member1;
+    Member member4;
+
+    @BeforeEach
+    public void before(){
+        bulkOperations=new MemberBulkOperations(em,transactionManager,teamStats,readModel,2);
+
+        Team teamA=new Team("bulkTeamA");
+        Team teamB=new Team("bulkTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        member1=new Member("member1",10,teamA);
+        member4=new Member("member4",40,teamB);
+        em.persist(member1);
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamA));
+        em.persist(member4);
+        em.persist(new Member("member5",50,teamB));
+    }
+
+    @Test
+    public void bulkAgeAdd() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamA");
+        List<Long> progress = new ArrayList<>();
+
+        long updated = bulkOperations.bulkAgeAdd(condition, 1, progress::add);
+
+        //2건씩 끊어서 처리하고, 이미 로딩된 엔티티도 DB 값으로 갱신된다
+        Assertions.assertThat(updated).isEqualTo(3);
+        Assertions.assertThat(progress).containsExactly(2L, 3L);
+        Assertions.assertThat(member1.getAge()).isEqualTo(11);
+        Assertions.assertThat(member4.getAge()).isEqualTo(40);
+    }
+
+    @Test
+    public void bulkAgeAddKeepsPendingChanges() throws Exception{
+
+        //COMMIT 모드면 쿼리 전에 자동으로 flush 하지 않는다
+        em.setFlushMode(FlushModeType.COMMIT);
+        Team teamB = member4.getTeam();
+        member1.changeTeam(teamB);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        bulkOperations.bulkAgeAdd(condition, 1);
+
+        //refresh 로 덮어쓰기 전에 flush 되어 팀 변경이 남아있다
+        Assertions.assertThat(member1.getAge()).isEqualTo(11);
+        Assertions.assertThat(member1.getTeam()).isEqualTo(teamB);
+    }
+
+    @Test
+    public void bulkDelete() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamB");
+        condition.setAgeGoe(40);
+
+        long deleted = bulkOperations.bulkDelete(condition);
+
+        Assertions.assertThat(deleted).isEqualTo(2);
+        Assertions.assertThat(em.contains(member4)).isFalse();
+        Assertions.assertThat(em.contains(member1)).isTrue();
+        Assertions.assertThat(em.find(Member.class, member4.getId())).isNull();
+        Assertions.assertThat(em.find(Member.class, member1.getId())).isNotNull();
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberImportResult;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.StringReader;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class MemberCsvImporterTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TeamRepository teamRepository;
+    @Autowired
+    MemberBatchInserter memberBatchInserter;
+
+    MemberCsvImporter importer;
+    Team importTeamA;
+
+    @BeforeEach
+    public void before(){
+        importer=new MemberCsvImporter(em,teamRepository,memberBatchInserter,2);
+        importTeamA=new Team("importTeamA");
+        em.persist(importTeamA);
+    }
+
+    @Test
+    public void importCsv() throws Exception{
+        String csv = "Age,USERNAME,teamName\n"
+                + "10,importMember1,importTeamA\n"
+                + "\n"
+                + "20,\"import, \"\"member2\"\"\",importTeamNew\n"
+                + "30,importMember3,importTeamNew\n"
+                + "40,importMember4,\n";
+
+        MemberImportResult result = importer.importCsv(new StringReader(csv));
+
+        Assertions.assertThat(result.getImported()).isEqualTo(4);
+        Assertions.assertThat(result.getCreatedTeams()).isEqualTo(1);
+
+        List<Member> members = new JPAQueryFactory(em)
+                .selectFrom(member)
+                .leftJoin(member.team).fetchJoin()
+                .where(member.username.startsWith("import"))
+                .orderBy(member.age.asc())
+                .fetch();
+        Assertions.assertThat(members).extracting("username")
+                .containsExactly("importMember1", "import, \"member2\"", "importMember3", "importMember4");
+        //있는 팀은 그대로 쓰고, 없는 팀은 한번만 만든다
+        Assertions.assertThat(members.get(0).getTeam().getId()).isEqualTo(importTeamA.getId());
+        Assertions.assertThat(members.get(1).getTeam().getName()).isEqualTo("importTeamNew");
+        Assertions.assertThat(members.get(2).getTeam().getId()).isEqualTo(members.get(1).getTeam().getId());
+        Assertions.assertThat(members.get(3).getTeam()).isNull();
+    }
+
+    @Test
+    public void invalidRow() throws Exception{
+        String csv = "username,age\n"
+                + "importMember1,10\n"
+                + "importMember2,old\n";
+
+        Assertions.assertThatThrownBy(() -> importer.importCsv(new StringReader(csv)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("line 3: age is not a number");
+    }
+
+    @Test
+    public void missingColumn() throws Exception{
+        Assertions.assertThatThrownBy(() -> importer.importCsv(new StringReader("username,teamName\n")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("csv header must contain age");
+    }
+}
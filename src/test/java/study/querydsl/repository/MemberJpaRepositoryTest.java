@@ -1,5 +1,6 @@
 package study.querydsl.repository;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +13,7 @@ import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +28,13 @@ class MemberJpaRepositoryTest {
     @Autowired
 
     MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberSearchQueryCache searchQueryCache;
+
+    @Autowired
+    MeterRegistry registry;
+
     @Test
     public void basicTest() throws Exception{
 
@@ -93,4 +102,73 @@ class MemberJpaRepositoryTest {
 
         Assertions.assertThat(result).extracting("username").containsExactly("member4");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void searchStreamTest() throws Exception{
+
+        Team teamA=new Team("teamA");
+        Team teamB=new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+
+        MemberSearchCondition memberSearchCondition = new MemberSearchCondition();
+        memberSearchCondition.setAgeGoe(35);
+        memberSearchCondition.setAgeLoe(40);
+        memberSearchCondition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        memberJpaRepository.searchStream(memberSearchCondition, 2, result::add);
+
+        Assertions.assertThat(result).extracting("username").containsExactly("member4");
+        Assertions.assertThat(result).isEqualTo(memberJpaRepository.search(memberSearchCondition));
+    }
+
+    @Test
+    public void searchQueryCacheTest() throws Exception{
+
+        Team teamA=new Team("teamA");
+        Team teamB=new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+
+        //64가지 조건 모양 모두 BooleanBuilder 로 만든 쿼리와 결과가 같아야 한다
+        for (int shape = 0; shape < MemberSearchQueryCache.SHAPE_COUNT; shape++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((shape & MemberSearchQueryCache.USERNAME) != 0) condition.setUsername("member3");
+            if ((shape & MemberSearchQueryCache.USERNAME_STARTS_WITH) != 0) condition.setUsernameStartsWith("MEM");
+            if ((shape & MemberSearchQueryCache.USERNAME_CONTAINS) != 0) condition.setUsernameContains("Ber3");
+            if ((shape & MemberSearchQueryCache.TEAM_NAME) != 0) condition.setTeamName("teamB");
+            if ((shape & MemberSearchQueryCache.AGE_GOE) != 0) condition.setAgeGoe(20);
+            if ((shape & MemberSearchQueryCache.AGE_LOE) != 0) condition.setAgeLoe(30);
+
+            Assertions.assertThat(memberJpaRepository.search(condition))
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        memberJpaRepository.search(condition);
+        long hits = searchQueryCache.getHitCount();
+
+        condition.setTeamName("teamB");
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+
+        Assertions.assertThat(result).extracting("username").containsExactly("member3","member4");
+        Assertions.assertThat(searchQueryCache.getHitCount()).isEqualTo(hits + 1);
+        //actuator 로도 보인다
+        Assertions.assertThat(registry.get("member.search.shape-cache").tag("result", "hit").functionCounter().count())
+                .isEqualTo(searchQueryCache.getHitCount());
+        Assertions.assertThat(registry.get("member.search.shape-cache").tag("result", "miss").functionCounter().count())
+                .isEqualTo(searchQueryCache.getMissCount());
+    }
+}
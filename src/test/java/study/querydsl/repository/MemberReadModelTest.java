@@ -0,0 +1,205 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 읽기 모델은 커밋된 변경만 반영하므로 트랜잭션을 직접 커밋하고 끝나면 지운다
+ */
+@SpringBootTest
+class MemberReadModelTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MemberReadModel readModel;
+    @Autowired
+    MemberRepository memberRepository;
+
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate=new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA=new Team("readModelTeamA");
+            em.persist(teamA);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("readModelA"+i,i*10,teamA));
+            }
+        });
+        readModel.rebuild();
+        //읽어온 뒤의 변경은 커밋 이벤트로 반영된다
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamB=new Team("readModelTeamB");
+            em.persist(teamB);
+            for (int i = 1; i <= 3; i++) {
+                em.persist(new Member("ReadModelB"+i,i*15,teamB));
+            }
+            em.persist(new Member("readModelNoTeam",20));
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> {
+            new JPAQueryFactory(em)
+                    .selectFrom(member)
+                    .where(member.username.startsWith("readModel").or(member.username.startsWith("ReadModel")))
+                    .fetch()
+                    .forEach(em::remove);
+            new JPAQueryFactory(em)
+                    .selectFrom(team)
+                    .where(team.name.startsWith("readModelTeam"))
+                    .fetch()
+                    .forEach(em::remove);
+        });
+    }
+
+    @Test
+    public void sameAsDatabase() throws Exception{
+
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        conditions.add(condition(null, "readModelTeamA", null, null));
+        conditions.add(condition(null, "readModelTeamB", 20, 40));
+        conditions.add(condition(null, null, 30, null));
+        conditions.add(condition(null, null, null, 15));
+        conditions.add(condition(null, null, 40, 30));
+        conditions.add(condition("readModelA3", null, null, null));
+        conditions.add(condition("readModelNoTeam", null, 20, 20));
+        MemberSearchCondition prefix = condition(null, null, 20, null);
+        prefix.setUsernameStartsWith("READMODELb");
+        conditions.add(prefix);
+        MemberSearchCondition contains = condition(null, "readModelTeamA", null, null);
+        contains.setUsernameContains("elA");
+        conditions.add(contains);
+
+        for (MemberSearchCondition condition : conditions) {
+            List<MemberTeamDto> expected = new ArrayList<>(memberRepository.search(condition));
+            expected.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+            Assertions.assertThat(readModel.search(condition)).as(condition.toString()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void searchPage() throws Exception{
+
+        MemberSearchCondition condition = condition(null, "readModelTeamA", 20, null);
+
+        Page<MemberTeamDto> first = readModel.searchPage(condition, PageRequest.of(0, 3));
+        Assertions.assertThat(first.getContent()).extracting("username").containsExactly("readModelA2", "readModelA3", "readModelA4");
+        Assertions.assertThat(first.getTotalElements()).isEqualTo(4);
+
+        Page<MemberTeamDto> last = readModel.searchPage(condition, PageRequest.of(1, 3));
+        Assertions.assertThat(last.getContent()).extracting("username").containsExactly("readModelA5");
+        Assertions.assertThat(last.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    public void applyCommittedChanges() throws Exception{
+
+        MemberSearchCondition teamB = condition(null, "readModelTeamB", null, null);
+
+        //팀 변경
+        transactionTemplate.executeWithoutResult(status -> {
+            Team target = new JPAQueryFactory(em).selectFrom(team).where(team.name.eq("readModelTeamB")).fetchOne();
+            Member moved = new JPAQueryFactory(em).selectFrom(member).where(member.username.eq("readModelA1")).fetchOne();
+            moved.changeTeam(target);
+        });
+        Assertions.assertThat(readModel.search(teamB)).extracting("username")
+                .containsExactly("readModelA1", "ReadModelB1", "ReadModelB2", "ReadModelB3");
+
+        //삭제
+        transactionTemplate.executeWithoutResult(status -> em.remove(
+                new JPAQueryFactory(em).selectFrom(member).where(member.username.eq("ReadModelB2")).fetchOne()));
+        Assertions.assertThat(readModel.search(teamB)).extracting("username")
+                .containsExactly("readModelA1", "ReadModelB1", "ReadModelB3");
+
+        //롤백된 변경은 반영하지 않는다
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(new JPAQueryFactory(em).selectFrom(member).where(member.username.eq("ReadModelB3")).fetchOne());
+            status.setRollbackOnly();
+        });
+        Assertions.assertThat(readModel.search(teamB)).hasSize(3);
+    }
+
+    @Test
+    public void outOfOrderCommits() throws Exception{
+
+        //먼저 id 를 받은 트랜잭션이 늦게 커밋되면 이벤트가 id 역순으로 들어온다
+        Long[] ids = new Long[2];
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new JPAQueryFactory(em).selectFrom(team).where(team.name.eq("readModelTeamA")).fetchOne();
+            Member late = new Member("readModelLate", 60, teamA);
+            em.persist(late);
+            ids[0] = late.getId();
+            requiresNew.executeWithoutResult(inner -> {
+                Member early = new Member("readModelEarly", 70);
+                em.persist(early);
+                ids[1] = early.getId();
+            });
+        });
+        Assertions.assertThat(ids[0]).isLessThan(ids[1]);
+
+        MemberSearchCondition ageGoe60 = condition(null, null, 60, null);
+        ageGoe60.setUsernameStartsWith("readModel");
+        Assertions.assertThat(readModel.search(ageGoe60)).extracting("username").containsExactly("readModelLate", "readModelEarly");
+        //읽어온 row(readModelA5) 와 추가된 row 를 id 순서로 합쳐서 페이징
+        MemberSearchCondition ageGoe50 = condition(null, null, 50, null);
+        ageGoe50.setUsernameStartsWith("readModel");
+        Assertions.assertThat(readModel.searchPage(ageGoe50, PageRequest.of(1, 1)).getContent())
+                .extracting("username").containsExactly("readModelLate");
+
+        //늦게 추가된 row 도 id 로 찾아서 수정/삭제된다
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, ids[0])));
+        Assertions.assertThat(readModel.search(ageGoe60)).extracting("username").containsExactly("readModelEarly");
+    }
+
+    @Test
+    public void commitDuringRebuildAddedOnce() throws Exception{
+
+        //변경을 모으기 시작한 뒤, DB 를 읽기 전에 커밋된 회원은 읽은 값에 이미 들어있다
+        readModel.rebuild(() -> transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("readModelRace", 90))));
+
+        Assertions.assertThat(readModel.search(condition("readModelRace", null, null, null))).hasSize(1);
+        MemberSearchCondition ageGoe90 = condition(null, null, 90, null);
+        ageGoe90.setUsernameStartsWith("readModel");
+        Assertions.assertThat(readModel.search(ageGoe90)).hasSize(1);
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -4,15 +4,20 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.suppert.QueryStats;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -105,6 +110,193 @@ class MemberRepositoryTest {
         Assertions.assertThat(result.getContent()).extracting("username").containsExactly("member1","member2","member3");
     }
 
+    @Test
+    public void searchAfter() throws Exception{
+
+        Team teamA=new Team("teamA");
+        Team teamB=new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1=new Member("member1",10,teamA);
+        Member member2=new Member("member2",20,teamA);
+
+        Member member3=new Member("member3",30,teamB);
+        Member member4=new Member("member4",40,teamB);
+
+
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        //다른 테스트에서 커밋된 데이터를 피하기 위해 member1 직전 id 부터 조회
+        List<MemberTeamDto> first = memberRepository.searchAfter(condition, member1.getId() - 1, 2);
+        Assertions.assertThat(first).extracting("username").containsExactly("member1","member2");
+
+        Long lastMemberId = first.get(first.size() - 1).getMemberId();
+        List<MemberTeamDto> second = memberRepository.searchAfter(condition, lastMemberId, 2);
+        Assertions.assertThat(second).extracting("username").containsExactly("member3","member4");
+    }
+
+    @Test
+    public void searchSlice() throws Exception{
+
+        Team team=new Team("sliceTeam");
+        em.persist(team);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("slice"+i,i*10,team));
+        }
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sliceTeam");
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 2));
+        Assertions.assertThat(first.getContent()).extracting("username").containsExactly("slice1", "slice2");
+        Assertions.assertThat(first.hasNext()).isTrue();
+
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(2, 2));
+        Assertions.assertThat(last.getContent()).extracting("username").containsExactly("slice5");
+        Assertions.assertThat(last.hasNext()).isFalse();
+
+        //카운트 쿼리 없이 컨텐츠 쿼리 한번
+        MemberSearchCondition ageCondition = new MemberSearchCondition();
+        ageCondition.setAgeGoe(10);
+        long statements = QueryStats.statements();
+        memberRepository.searchSlice(ageCondition, PageRequest.of(0, 2));
+        Assertions.assertThat(QueryStats.statements() - statements).isEqualTo(1);
+    }
+
+    @Test
+    public void searchUsernamePrefixAndSubstring() throws Exception{
+
+        Team team=new Team("typeAheadTeam");
+        em.persist(team);
+        em.persist(new Member("KimTypeAhead",10,team));
+        em.persist(new Member("kimtypo",20,team));
+        em.persist(new Member("LeeTypeAhead",30,team));
+        em.persist(new Member("aheadtype_x",40,team));
+        em.persist(new Member("100%typeahead",50,team));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("typeAheadTeam");
+
+        //대소문자 구분 없이 앞부분 일치
+        condition.setUsernameStartsWith("KIMTYP");
+        Assertions.assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactlyInAnyOrder("KimTypeAhead", "kimtypo");
+
+        //조각(typ, ype, pea, eah, ahe, hea, ead)은 다 있어도 순서가 다르면 제외
+        condition.setUsernameStartsWith(null);
+        condition.setUsernameContains("typeAHEAD");
+        Assertions.assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactlyInAnyOrder("KimTypeAhead", "LeeTypeAhead", "100%typeahead");
+
+        //like 와일드카드는 글자 그대로
+        condition.setUsernameContains("0%t");
+        Assertions.assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactly("100%typeahead");
+        condition.setUsernameContains(null);
+        condition.setUsernameStartsWith("aheadtype_");
+        Assertions.assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactly("aheadtype_x");
+
+        //3글자보다 짧으면 trigram 없이 like 로
+        condition.setUsernameStartsWith(null);
+        condition.setUsernameContains("_X");
+        Assertions.assertThat(memberRepository.search(condition)).extracting("username")
+                .containsExactly("aheadtype_x");
+
+        //카운트 캐시는 조건 값마다 따로
+        condition.setUsernameContains("typeahead");
+        Assertions.assertThat(memberRepository.searchPageSimple(condition, PageRequest.of(0, 1)).getTotalElements()).isEqualTo(3);
+        condition.setUsernameContains("leetype");
+        Assertions.assertThat(memberRepository.searchPageSimple(condition, PageRequest.of(0, 1)).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    public void searchBatch() throws Exception{
+
+        Team teamA=new Team("batchTeamA");
+        Team teamB=new Team("batchTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 4; i++) {
+            em.persist(new Member("batchA"+i,i*10,teamA));
+            em.persist(new Member("batchB"+i,i*10+5,teamB));
+        }
+        em.flush();
+
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        MemberSearchCondition byTeam = new MemberSearchCondition();
+        byTeam.setTeamName("batchTeamB");
+        byTeam.setAgeGoe(20);
+        conditions.add(byTeam);
+        MemberSearchCondition byPrefix = new MemberSearchCondition();
+        byPrefix.setUsernameStartsWith("BATCHA");
+        byPrefix.setAgeLoe(20);
+        conditions.add(byPrefix);
+        MemberSearchCondition byContains = new MemberSearchCondition();
+        byContains.setUsernameContains("tchb3");
+        conditions.add(byContains);
+        MemberSearchCondition byUsername = new MemberSearchCondition();
+        byUsername.setUsername("batchA4");
+        conditions.add(byUsername);
+        MemberSearchCondition none = new MemberSearchCondition();
+        none.setUsername("batchNone");
+        conditions.add(none);
+
+        List<List<MemberTeamDto>> results = memberRepository.searchBatch(conditions);
+
+        Assertions.assertThat(results).hasSize(5);
+        for (int i = 0; i < conditions.size(); i++) {
+            Assertions.assertThat(results.get(i)).containsExactlyInAnyOrderElementsOf(memberRepository.search(conditions.get(i)));
+        }
+        Assertions.assertThat(results.get(0)).extracting("username").containsExactly("batchB2", "batchB3", "batchB4");
+        Assertions.assertThat(results.get(1)).extracting("username").containsExactly("batchA1", "batchA2");
+        Assertions.assertThat(results.get(4)).isEmpty();
+
+        //조건이 몇개든 statement 한번
+        long statements = QueryStats.statements();
+        memberRepository.searchBatch(conditions.subList(1, 5));
+        Assertions.assertThat(QueryStats.statements() - statements).isEqualTo(1);
+    }
+
+    @Test
+    public void searchBatchRejectsNullCondition() throws Exception{
+
+        Assertions.assertThatThrownBy(() -> memberRepository.searchBatch(Arrays.asList(new MemberSearchCondition(), null)))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class)
+                .hasRootCauseInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("condition[1] is null");
+    }
+
+    @Test
+    public void countCacheInvalidatedOnSave() throws Exception{
+
+        Team teamA=new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(10);
+        PageRequest pageRequest = PageRequest.of(0, 1);
+
+        long before = memberRepository.searchPageSimple(condition,pageRequest).getTotalElements();
+
+        em.persist(new Member("member3",30,teamA));
+
+        Page<MemberTeamDto> result = memberRepository.searchPageSimple(condition,pageRequest);
+        Assertions.assertThat(result.getTotalElements()).isEqualTo(before + 1);
+    }
+
 
 
-}
\ No newline at end of file
+}
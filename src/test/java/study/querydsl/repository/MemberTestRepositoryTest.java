@@ -1,17 +1,24 @@
 package study.querydsl.repository;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.stat.SessionStatistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 @Transactional
@@ -53,4 +60,89 @@ class MemberTestRepositoryTest {
         Assertions.assertThat(result.getSize()).isEqualTo(3);
         Assertions.assertThat(result.getContent()).extracting("username").containsExactly("member1","member2","member3");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void teamFetch() throws Exception{
+
+        Team teamA=new Team("teamA");
+        Team teamB=new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        PageRequest pageRequest = PageRequest.of(0, 4);
+
+        //fetch join: 조회 시점에 팀까지 초기화
+        Page<Member> joined = memberTestRepository.searchPageByApplyPage(condition, pageRequest, TeamFetch.JOIN);
+        Assertions.assertThat(joined.getContent()).allMatch(m -> Hibernate.isInitialized(m.getTeam()));
+        em.clear();
+
+        //batch: 처음 팀 하나에 접근할 때 나머지 팀도 in 쿼리 한번으로 영속성 컨텍스트에 올라온다
+        Page<Member> batched = memberTestRepository.applyPagination(condition, pageRequest, TeamFetch.BATCH);
+        Assertions.assertThat(batched.getContent()).noneMatch(m -> Hibernate.isInitialized(m.getTeam()));
+        SessionStatistics statistics = em.unwrap(Session.class).getStatistics();
+        Assertions.assertThat(statistics.getEntityCount()).isEqualTo(4);
+        batched.getContent().get(0).getTeam().getName();
+        Assertions.assertThat(statistics.getEntityCount()).isEqualTo(6);
+    }
+
+    @Test
+    @Transactional(readOnly = true)
+    public void readOnlySearch() throws Exception{
+
+        Team teamA=new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.flush();
+        em.clear();
+
+        //읽기 전용 트랜잭션에서 조회한 엔티티는 스냅샷이 없고 변경해도 flush 되지 않는다
+        List<Member> result = memberTestRepository.basicSelect();
+        Session session = em.unwrap(Session.class);
+        Assertions.assertThat(result).isNotEmpty().allMatch(session::isReadOnly);
+        Assertions.assertThat(session.getHibernateFlushMode()).isEqualTo(FlushMode.MANUAL);
+    }
+
+    @Test
+    public void searchInReadWriteTransaction() throws Exception{
+
+        Team teamA=new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+
+        //쓰기 트랜잭션에 참여하면 자동 flush 되고, 조회한 엔티티도 수정할 수 있다
+        List<Member> result = memberTestRepository.basicSelect();
+        Session session = em.unwrap(Session.class);
+        Assertions.assertThat(result).extracting("username").contains("member1");
+        Assertions.assertThat(result).noneMatch(session::isReadOnly);
+    }
+
+    @Test
+    public void applySlice() throws Exception{
+
+        Team teamA=new Team("teamA");
+        em.persist(teamA);
+        for (int i = 1; i <= 3; i++) {
+            em.persist(new Member("member"+i,i*10,teamA));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(30);
+
+        Slice<Member> result = memberTestRepository.applySlice(condition, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age")));
+
+        Assertions.assertThat(result.getContent()).extracting("age").containsExactly(30, 20);
+        Assertions.assertThat(result.hasNext()).isTrue();
+        Assertions.assertThat(memberTestRepository.applySlice(condition, PageRequest.of(1, 2)).hasNext()).isFalse();
+    }
+}
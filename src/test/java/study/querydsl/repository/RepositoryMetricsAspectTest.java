@@ -0,0 +1,122 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.suppert.QueryStats;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+
+@SpringBootTest
+@Transactional
+class RepositoryMetricsAspectTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MeterRegistry registry;
+
+    @BeforeEach
+    public void before(){
+        Team teamA=new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void searchPageComplexMetrics() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        long calls = timerCount();
+        double skipped = skippedCount();
+        DistributionSummary rows = registry.find("member.repository.rows")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageComplex").summary();
+        double rowsBefore = rows != null ? rows.totalAmount() : 0;
+
+        //첫 페이지에서 컨텐츠가 페이지 크기보다 작으면 카운트 쿼리를 생략한다
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 10));
+
+        Assertions.assertThat(timerCount()).isEqualTo(calls + 1);
+        Assertions.assertThat(skippedCount()).isEqualTo(skipped + 1);
+        Assertions.assertThat(registry.get("member.repository.rows")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageComplex").summary().totalAmount())
+                .isEqualTo(rowsBefore + 2);
+        Assertions.assertThat(registry.get("member.repository.statements")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageComplex").summary().max())
+                .isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void searchBatchRows() throws Exception{
+
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("teamA");
+        MemberSearchCondition member1 = new MemberSearchCondition();
+        member1.setUsername("member1");
+        DistributionSummary rows = registry.find("member.repository.rows")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchBatch").summary();
+        double rowsBefore = rows != null ? rows.totalAmount() : 0;
+
+        //조건 수(2)가 아니라 조건별 결과 row 수의 합(2 + 1)
+        memberRepository.searchBatch(Arrays.asList(teamA, member1));
+
+        Assertions.assertThat(registry.get("member.repository.rows")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchBatch").summary().totalAmount())
+                .isEqualTo(rowsBefore + 3);
+    }
+
+    @Test
+    public void onlyQueryMethods() throws Exception{
+
+        memberJpaRepository.searchQueryOf(0);
+        memberJpaRepository.save(new Member("member3", 30));
+
+        Assertions.assertThat(registry.find("member.repository.calls")
+                .tags("repository", "MemberJpaRepository", "method", "searchQueryOf").timer()).isNull();
+        Assertions.assertThat(registry.find("member.repository.calls")
+                .tags("repository", "MemberJpaRepository", "method", "save").timer()).isNull();
+    }
+
+    @Test
+    public void nestedCallKeepsOuterCountRecord() throws Exception{
+
+        //바깥 리포지토리 호출이 카운트 쿼리를 기록한 상태에서 안쪽 리포지토리 호출
+        QueryStats.countQuery(false);
+        memberJpaRepository.search(new MemberSearchCondition());
+
+        Assertions.assertThat(QueryStats.pollCountSkipped()).isFalse();
+    }
+
+    private long timerCount() {
+        Timer timer = registry.find("member.repository.calls")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageComplex", "outcome", "success").timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private double skippedCount() {
+        Counter counter = registry.find("member.repository.count-query")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageComplex", "result", "skipped").counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,230 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.controller.MemberSearchBulkhead;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.suppert.QueryStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+//트랜잭션 밖에서 호출해야 합치는 대상이 되므로 클래스에 @Transactional 을 붙이지 않는다
+@SpringBootTest
+class SearchCoalescingAspectTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MeterRegistry registry;
+    @Autowired
+    PlatformTransactionManager txManager;
+    @Autowired
+    MemberCountCache countCache;
+    @Autowired
+    MemberRepositoryImpl memberRepositoryImpl;
+
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    //다음 한번의 searchPageSimple 실행(leader)을 release 될 때까지 붙잡는다 (컨텍스트를 새로 띄우지 않도록 구현체 프록시에 직접 추가)
+    AtomicReference<CountDownLatch[]> holdNext = new AtomicReference<>();
+    MethodInterceptor hold = invocation -> {
+        CountDownLatch[] latches = invocation.getMethod().getName().equals("searchPageSimple") ? holdNext.getAndSet(null) : null;
+        if (latches != null) {
+            latches[0].countDown();
+            latches[1].await(5, TimeUnit.SECONDS);
+        }
+        return invocation.proceed();
+    };
+
+    @BeforeEach
+    public void before(){
+        ((Advised) memberRepositoryImpl).addAdvice(hold);
+    }
+
+    @AfterEach
+    public void after(){
+        ((Advised) memberRepositoryImpl).removeAdvice(hold);
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void coalesceOutsideWriteTransaction() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameStartsWith("coalescing");
+
+        double leaders = count("leader");
+        memberRepository.searchPageSimple(condition, PageRequest.of(0, 10));
+        Assertions.assertThat(count("leader")).isEqualTo(leaders + 1);
+
+        //쓰기 트랜잭션 안에서는 합치지 않고 바로 실행한다
+        new TransactionTemplate(txManager).executeWithoutResult(status ->
+                memberRepository.searchPageSimple(condition, PageRequest.of(0, 10)));
+        Assertions.assertThat(count("leader")).isEqualTo(leaders + 1);
+        Assertions.assertThat(registry.get("member.search.coalescing.in-flight").gauge().value()).isZero();
+    }
+
+    @Test
+    public void concurrentCallsShareOneQuery() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameStartsWith("concurrentCoalescing");
+        PageRequest pageable = PageRequest.of(0, 10);
+        //카운트를 캐시에 넣어두면 페이지 조회는 컨텐츠 쿼리 하나
+        memberRepository.searchPageSimple(condition, pageable);
+
+        double leaders = count("leader");
+        double coalesced = count("coalesced");
+        long sharedCalls = sharedCalls();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = holdNext(entered);
+
+        Future<Long> leader = callers.submit(() -> statementsOf(condition, pageable));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        List<Future<Long>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(callers.submit(() -> statementsOf(condition, pageable)));
+        }
+        waitForWaiters(3);
+        release.countDown();
+
+        long statements = leader.get(5, TimeUnit.SECONDS);
+        for (Future<Long> follower : followers) {
+            statements += follower.get(5, TimeUnit.SECONDS);
+        }
+        Assertions.assertThat(statements).isEqualTo(1);
+        Assertions.assertThat(count("leader")).isEqualTo(leaders + 1);
+        Assertions.assertThat(count("coalesced")).isEqualTo(coalesced + 3);
+        //나눠받은 호출도 리포지토리 메트릭에 남는다
+        Assertions.assertThat(sharedCalls()).isEqualTo(sharedCalls + 3);
+    }
+
+    @Test
+    public void notJoinFlightStartedBeforeWrite() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameStartsWith("writeCoalescing");
+        PageRequest pageable = PageRequest.of(0, 10);
+
+        double leaders = count("leader");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = holdNext(entered);
+        Future<Page<MemberTeamDto>> before = callers.submit(() -> memberRepository.searchPageSimple(condition, pageable));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //실행 중에 데이터가 바뀌면 (쓰기 커밋) 뒤에 온 호출은 기다리지 않고 새로 실행한다
+        countCache.invalidateAll();
+        CompletableFuture<Page<MemberTeamDto>> after = CompletableFuture.supplyAsync(
+                () -> memberRepository.searchPageSimple(condition, pageable), callers);
+        Assertions.assertThat(after.get(5, TimeUnit.SECONDS)).isEmpty();
+
+        release.countDown();
+        Assertions.assertThat(before.get(5, TimeUnit.SECONDS)).isEmpty();
+        Assertions.assertThat(count("leader")).isEqualTo(leaders + 2);
+    }
+
+    @Test
+    public void waitersReleaseBulkheadPermits() throws Exception{
+
+        MemberSearchBulkhead bulkhead = new MemberSearchBulkhead(2, Duration.ofMillis(200), new SimpleMeterRegistry());
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameStartsWith("bulkheadCoalescing");
+        MemberSearchCondition other = new MemberSearchCondition();
+        other.setUsernameStartsWith("bulkheadOther");
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = holdNext(entered);
+        Future<Integer> leader = callers.submit(() -> search(bulkhead, condition));
+        Assertions.assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        List<Future<Integer>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(callers.submit(() -> search(bulkhead, condition)));
+        }
+        waitForWaiters(3);
+
+        //기다리는 호출은 자리를 돌려줬으므로 leader 만 자리를 잡고 있고 다른 검색도 들어온다
+        Assertions.assertThat(bulkhead.getActive()).isEqualTo(1);
+        Assertions.assertThat(search(bulkhead, other)).isEqualTo(200);
+
+        release.countDown();
+        Assertions.assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+        for (Future<Integer> follower : followers) {
+            Assertions.assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+        }
+        Assertions.assertThat(bulkhead.getActive()).isZero();
+    }
+
+    private int search(MemberSearchBulkhead bulkhead, MemberSearchCondition condition) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        bulkhead.doFilter(new MockHttpServletRequest("GET", "/v2/members"), response,
+                (req, res) -> memberRepository.searchPageSimple(condition, PageRequest.of(0, 10)));
+        return response.getStatus();
+    }
+
+    private CountDownLatch holdNext(CountDownLatch entered) {
+        CountDownLatch release = new CountDownLatch(1);
+        holdNext.set(new CountDownLatch[]{entered, release});
+        return release;
+    }
+
+    private long statementsOf(MemberSearchCondition condition, PageRequest pageable) {
+        long before = QueryStats.statements();
+        memberRepository.searchPageSimple(condition, pageable);
+        return QueryStats.statements() - before;
+    }
+
+    private long sharedCalls() {
+        Timer timer = registry.find("member.repository.calls")
+                .tags("repository", "MemberRepositoryImpl", "method", "searchPageSimple", "outcome", "coalesced").timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    //기다리는 호출이 leader 의 future 를 잡을 때까지 (SingleFlightTest 와 같이 스레드 상태로 확인)
+    private static void waitForWaiters(int waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && waitingThreads() < waiters) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static long waitingThreads() {
+        return Thread.getAllStackTraces().entrySet().stream()
+                .filter(entry -> entry.getKey().getState() == Thread.State.TIMED_WAITING)
+                .filter(entry -> Arrays.stream(entry.getValue())
+                        .anyMatch(frame -> frame.getClassName().equals(CompletableFuture.class.getName())
+                                && frame.getMethodName().equals("get")))
+                .count();
+    }
+
+    private double count(String result) {
+        Counter counter = registry.find("member.search.coalescing")
+                .tags("method", "searchPageSimple", "result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.repository;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Map;
+
+@SpringBootTest
+class SearchIndexCheckTest {
+
+    @Autowired
+    SearchIndexCheck searchIndexCheck;
+
+    @Test
+    public void everySearchShapeUsesIndex() throws Exception{
+
+        Map<Integer, String> fullScans = searchIndexCheck.fullScanPlans();
+
+        Assertions.assertThat(fullScans).isEmpty();
+    }
+}
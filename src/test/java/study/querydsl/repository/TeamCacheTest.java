@@ -0,0 +1,79 @@
+package study.querydsl.repository;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * 2차 캐시는 커밋된 데이터만 올라가므로 트랜잭션을 직접 커밋하고 끝나면 지운다
+ */
+@SpringBootTest
+class TeamCacheTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TeamRepository teamRepository;
+    @Autowired
+    TeamCache teamCache;
+
+    TransactionTemplate transactionTemplate;
+    Long teamId;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate=new TransactionTemplate(transactionManager);
+        teamId=transactionTemplate.execute(status -> {
+            Team team = new Team("cacheTeam");
+            em.persist(team);
+            return team.getId();
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> teamRepository.deleteById(teamId));
+    }
+
+    @Test
+    public void findTeamFromSecondLevelCache() throws Exception{
+
+        teamCache.evict(teamId);
+        long hits = teamCache.teamStatistics().getHitCount();
+
+        //첫 조회는 DB 에서 읽어 캐시에 넣고, 다음 영속성 컨텍스트에서는 캐시에서 읽는다
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, teamId));
+        Assertions.assertThat(teamCache.contains(teamId)).isTrue();
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, teamId));
+
+        Assertions.assertThat(teamCache.teamStatistics().getHitCount()).isEqualTo(hits + 1);
+
+        teamCache.evict(teamId);
+        Assertions.assertThat(teamCache.contains(teamId)).isFalse();
+    }
+
+    @Test
+    public void findIdsByNameFromQueryCache() throws Exception{
+
+        teamCache.evictAll();
+        long hits = teamCache.queryStatistics().getHitCount();
+
+        List<Long> first = teamRepository.findIdsByName("cacheTeam");
+        List<Long> second = teamRepository.findIdsByName("cacheTeam");
+
+        Assertions.assertThat(first).containsExactly(teamId);
+        Assertions.assertThat(second).containsExactly(teamId);
+        Assertions.assertThat(teamCache.queryStatistics().getHitCount()).isEqualTo(hits + 1);
+    }
+}
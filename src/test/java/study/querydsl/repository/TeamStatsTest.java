@@ -0,0 +1,179 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberInsertDto;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 커밋된 변경만 반영되므로 트랜잭션을 직접 커밋하고 끝나면 지운다
+ */
+@SpringBootTest
+class TeamStatsTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TeamStats teamStats;
+    @Autowired
+    MemberBulkOperations bulkOperations;
+    @Autowired
+    MemberBatchInserter memberBatchInserter;
+
+    TransactionTemplate transactionTemplate;
+    Long teamAId;
+    Long teamBId;
+    Long member1Id;
+    Long member2Id;
+
+    @BeforeEach
+    public void before(){
+        transactionTemplate=new TransactionTemplate(transactionManager);
+        teamStats.rebuild();
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA=new Team("statsTeamA");
+            Team teamB=new Team("statsTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member1=new Member("member1",10,teamA);
+            Member member2=new Member("member2",20,teamA);
+            em.persist(member1);
+            em.persist(member2);
+            em.persist(new Member("member3",30,teamB));
+            teamAId=teamA.getId();
+            teamBId=teamB.getId();
+            member1Id=member1.getId();
+            member2Id=member2.getId();
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        transactionTemplate.executeWithoutResult(status -> {
+            new JPAQueryFactory(em)
+                    .selectFrom(member)
+                    .where(member.team.id.in(teamAId, teamBId))
+                    .fetch()
+                    .forEach(em::remove);
+            em.remove(em.find(Team.class, teamAId));
+            em.remove(em.find(Team.class, teamBId));
+        });
+    }
+
+    @Test
+    public void applyCommittedChanges() throws Exception{
+
+        assertStats(teamAId, "statsTeamA", 2, 30, 10, 20);
+        assertStats(teamBId, "statsTeamB", 1, 30, 30, 30);
+
+        transactionTemplate.executeWithoutResult(status ->
+                em.find(Member.class, member2Id).changeTeam(em.find(Team.class, teamBId)));
+        assertStats(teamAId, "statsTeamA", 1, 10, 10, 10);
+        assertStats(teamBId, "statsTeamB", 2, 50, 20, 30);
+
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, member1Id)));
+        TeamStatsDto teamA = statsOf(teamAId);
+        Assertions.assertThat(teamA.getCount()).isEqualTo(0);
+        Assertions.assertThat(teamA.getAvgAge()).isNull();
+        Assertions.assertThat(teamA.getMinAge()).isNull();
+
+        //롤백된 변경은 반영하지 않는다
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("member4",40,em.find(Team.class, teamBId)));
+            status.setRollbackOnly();
+        });
+        assertStats(teamBId, "statsTeamB", 2, 50, 20, 30);
+
+        //DB 에서 다시 계산한 값과 같다
+        List<TeamStatsDto> incremental = teamStats.snapshot();
+        teamStats.rebuild();
+        Assertions.assertThat(teamStats.snapshot()).isEqualTo(incremental);
+    }
+
+    @Test
+    public void commitDuringRebuildCountedOnce() throws Exception{
+
+        //변경을 모으기 시작한 뒤, DB 를 읽기 전에 커밋된 변경은 읽은 값에 이미 들어있다
+        teamStats.rebuild(() -> transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("member4", 40, em.find(Team.class, teamAId)))));
+
+        assertStats(teamAId, "statsTeamA", 3, 70, 10, 40);
+
+        //다시 계산한 뒤에 커밋된 변경은 그대로 반영
+        transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("member5", 50, em.find(Team.class, teamAId))));
+        assertStats(teamAId, "statsTeamA", 4, 120, 10, 50);
+    }
+
+    @Test
+    public void rebuildThreadIsDaemon() throws Exception{
+
+        //컨텍스트를 닫지 않아도 JVM 이 끝날 수 있어야 한다
+        Assertions.assertThat(Thread.getAllStackTraces().keySet())
+                .filteredOn(thread -> thread.getName().startsWith("team-stats-"))
+                .isNotEmpty()
+                .allMatch(Thread::isDaemon);
+    }
+
+    @Test
+    public void batchInsert() throws Exception{
+
+        memberBatchInserter.insert(Arrays.asList(
+                new MemberInsertDto("member4", 5, teamAId),
+                new MemberInsertDto("member5", 50, teamAId),
+                new MemberInsertDto("member6", 60, teamBId)).iterator(), 2, done -> { });
+
+        assertStats(teamAId, "statsTeamA", 4, 85, 5, 50);
+        assertStats(teamBId, "statsTeamB", 2, 90, 30, 60);
+    }
+
+    @Test
+    public void rebuildAfterBulkUpdate() throws Exception{
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("statsTeamA");
+        bulkOperations.bulkAgeAdd(condition, 5);
+
+        //벌크 수정은 백그라운드에서 다시 계산한다
+        long deadline = System.currentTimeMillis() + 5000;
+        while (statsOf(teamAId).getSumAge() != 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertStats(teamAId, "statsTeamA", 2, 40, 15, 25);
+    }
+
+    private void assertStats(Long teamId, String teamName, long count, long sumAge, int minAge, int maxAge) {
+        TeamStatsDto stats = statsOf(teamId);
+        Assertions.assertThat(stats.getTeamName()).isEqualTo(teamName);
+        Assertions.assertThat(stats.getCount()).isEqualTo(count);
+        Assertions.assertThat(stats.getSumAge()).isEqualTo(sumAge);
+        Assertions.assertThat(stats.getAvgAge()).isEqualTo((double) sumAge / count);
+        Assertions.assertThat(stats.getMinAge()).isEqualTo(minAge);
+        Assertions.assertThat(stats.getMaxAge()).isEqualTo(maxAge);
+    }
+
+    private TeamStatsDto statsOf(Long teamId) {
+        return teamStats.snapshot().stream()
+                .filter(stats -> stats.getTeamId().equals(teamId))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no stats for team " + teamId));
+    }
+}
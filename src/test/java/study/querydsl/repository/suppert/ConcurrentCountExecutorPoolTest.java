@@ -0,0 +1,138 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.zaxxer.hikari.HikariDataSource;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 커넥션이 2개뿐인 풀에서 요청 2개가 각자 커넥션을 잡고 카운트를 기다려도 멈추지 않는지 확인한다.
+ * 스프링 컨텍스트를 새로 띄우면 스키마를 다시 만들므로 (ddl-auto: create) 같은 DB 에 작은 풀과 EntityManagerFactory 만 따로 만든다.
+ */
+@SpringBootTest
+class ConcurrentCountExecutorPoolTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Value("${spring.datasource.url}")
+    String url;
+    @Value("${spring.datasource.username}")
+    String username;
+
+    HikariDataSource dataSource;
+    EntityManagerFactory emf;
+    EntityManager sharedEm;
+    TransactionTemplate readOnly;
+    ConcurrentCountExecutor countExecutor;
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+
+    @BeforeEach
+    public void before(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("poolCount"+i,10+i));
+            }
+        });
+
+        dataSource=new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setMaximumPoolSize(2);
+        dataSource.setConnectionTimeout(10_000);
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("study.querydsl.entity");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        Properties properties = new Properties();
+        properties.put("hibernate.hbm2ddl.auto", "none");
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        emf=factory.getObject();
+
+        sharedEm=SharedEntityManagerCreator.createSharedEntityManager(emf);
+        JpaTransactionManager poolTransactionManager = new JpaTransactionManager(emf);
+        readOnly=new TransactionTemplate(poolTransactionManager);
+        readOnly.setReadOnly(true);
+        //카운트 스레드 4개를 설정해도 커넥션 2개짜리 풀이면 1개로 줄인다
+        countExecutor=new ConcurrentCountExecutor(sharedEm,poolTransactionManager,true,4,10,Duration.ofMillis(300),2);
+    }
+
+    @AfterEach
+    public void after(){
+        callers.shutdownNow();
+        countExecutor.shutdown();
+        emf.close();
+        dataSource.close();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> em
+                .createQuery("delete from Member m where m.username like 'poolCount%'")
+                .executeUpdate());
+    }
+
+    @Test
+    public void fallBackWhenPoolExhausted() throws Exception{
+
+        CyclicBarrier bothHoldConnections = new CyclicBarrier(2);
+        List<Future<Page<Member>>> pages = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            pages.add(callers.submit(() -> readOnly.execute(status -> {
+                //컨텐츠 쿼리로 커넥션을 잡은 채로 (트랜잭션이 끝날 때까지) 카운트를 요청한다
+                List<Member> content = query(sharedEm).orderBy(member.id.asc()).limit(2).fetch();
+                await(bothHoldConnections);
+                return countExecutor.getPage(() -> content, PageRequest.of(0, 2), countEm -> query(countEm).fetchCount());
+            })));
+        }
+
+        for (Future<Page<Member>> page : pages) {
+            //카운트 스레드는 커넥션을 얻지 못하므로 max-wait 뒤에 각자 자기 커넥션으로 카운트한다 (connection-timeout 10초보다 빨리)
+            Assertions.assertThat(page.get(5, TimeUnit.SECONDS).getTotalElements()).isEqualTo(5);
+        }
+    }
+
+    private static JPAQuery<Member> query(EntityManager em) {
+        return new JPAQuery<Member>(em)
+                .select(member)
+                .from(member)
+                .where(member.username.startsWith("poolCount"));
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 카운트 쿼리는 별도 커넥션에서 실행되므로 데이터를 커밋해두고 끝나면 지운다
+ */
+@SpringBootTest
+class ConcurrentCountExecutorTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    JPAQueryFactory queryFactory;
+    TransactionTemplate transactionTemplate;
+    ConcurrentCountExecutor countExecutor;
+
+    @BeforeEach
+    public void before(){
+        queryFactory=new JPAQueryFactory(em);
+        transactionTemplate=new TransactionTemplate(transactionManager);
+        countExecutor=new ConcurrentCountExecutor(em,transactionManager,true,2,10,Duration.ofSeconds(5),10);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("concurrent"+i,10+i));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after(){
+        countExecutor.shutdown();
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .delete(member)
+                .where(member.username.startsWith("concurrent"))
+                .execute());
+    }
+
+    @Test
+    public void countOnOtherThread() throws Exception{
+
+        AtomicReference<String> countThread = new AtomicReference<>();
+
+        Page<Member> result = countExecutor.getPage(() -> contentQuery().offset(0).limit(2).fetch(), PageRequest.of(0, 2), countEm -> {
+            countThread.set(Thread.currentThread().getName());
+            return countQuery().clone(countEm).fetchCount();
+        });
+
+        Assertions.assertThat(result.getContent()).hasSize(2);
+        Assertions.assertThat(result.getTotalElements()).isEqualTo(5);
+        Assertions.assertThat(countThread.get()).startsWith("count-query-");
+    }
+
+    @Test
+    public void countRoutesLikeCaller() throws Exception{
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        AtomicReference<Boolean> countReadOnly = new AtomicReference<>();
+        AtomicReference<ClientWriteMarker> countMarker = new AtomicReference<>();
+
+        ClientWriteMarker.bind(1000, written -> {});
+        ClientWriteMarker marker = ClientWriteMarker.current();
+        try {
+            //readOnly 트랜잭션에서 부르면 카운트도 readOnly 트랜잭션, 같은 클라이언트로 실행된다 (replica 라우팅이 같아짐)
+            Page<Member> result = readOnly.execute(status ->
+                    countExecutor.getPage(() -> contentQuery().offset(0).limit(2).fetch(), PageRequest.of(0, 2), countEm -> {
+                        countReadOnly.set(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+                        countMarker.set(ClientWriteMarker.current());
+                        return countQuery().clone(countEm).fetchCount();
+                    }));
+
+            Assertions.assertThat(result.getTotalElements()).isEqualTo(5);
+        } finally {
+            ClientWriteMarker.clear();
+        }
+        Assertions.assertThat(countReadOnly.get()).isTrue();
+        Assertions.assertThat(countMarker.get()).isSameAs(marker);
+    }
+
+    @Test
+    public void skipCountWithoutWaiting() throws Exception{
+
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            //컨텐츠가 페이지 크기보다 작으면 카운트를 기다리지 않는다
+            Page<Member> result = countExecutor.getPage(() -> contentQuery().fetch(), PageRequest.of(0, 10), countEm -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return -1;
+            });
+
+            Assertions.assertThat(result.getTotalElements()).isEqualTo(5);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void sequentialInReadWriteTransaction() throws Exception{
+
+        String caller = Thread.currentThread().getName();
+        AtomicReference<String> countThread = new AtomicReference<>();
+
+        Page<Member> result = transactionTemplate.execute(status -> {
+            em.persist(new Member("concurrent5",15));
+            //아직 커밋하지 않은 member 도 같은 커넥션에서 카운트된다
+            return countExecutor.getPage(() -> contentQuery().offset(0).limit(2).fetch(), PageRequest.of(0, 2), countEm -> {
+                countThread.set(Thread.currentThread().getName());
+                return countQuery().clone(countEm).fetchCount();
+            });
+        });
+
+        Assertions.assertThat(result.getTotalElements()).isEqualTo(6);
+        Assertions.assertThat(countThread.get()).isEqualTo(caller);
+    }
+
+    private JPAQuery<Member> contentQuery() {
+        return queryFactory
+                .selectFrom(member)
+                .where(member.username.startsWith("concurrent"))
+                .orderBy(member.id.asc());
+    }
+
+    private JPAQuery<Member> countQuery() {
+        return new JPAQuery<Member>()
+                .select(member)
+                .from(member)
+                .where(member.username.startsWith("concurrent"));
+    }
+}
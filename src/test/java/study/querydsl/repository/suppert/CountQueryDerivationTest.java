@@ -0,0 +1,75 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CountQueryDerivationTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory=new JPAQueryFactory(em);
+        Team teamA=new Team("teamA");
+        Team teamB=new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",40,teamB));
+    }
+
+    @Test
+    public void dropUnreferencedLeftJoinAndOrderBy() throws Exception{
+
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.age.goe(20))
+                .orderBy(member.username.desc());
+
+        JPAQuery<Long> count = CountQueryDerivation.derive(queryFactory, content, member.id);
+
+        Assertions.assertThat(count.toString())
+                .contains("count(member1.id)")
+                .doesNotContain("join")
+                .doesNotContain("order by");
+        Assertions.assertThat(count.fetchOne()).isEqualTo(content.fetchCount());
+    }
+
+    @Test
+    public void keepLeftJoinReferencedByWhere() throws Exception{
+
+        JPAQuery<Member> content = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(team.name.eq("teamB"));
+
+        JPAQuery<Long> count = CountQueryDerivation.derive(queryFactory, content, member.id);
+
+        Assertions.assertThat(count.toString())
+                .contains("left join member1.team as team")
+                .doesNotContain("fetch");
+        Assertions.assertThat(count.fetchOne()).isEqualTo(2L);
+    }
+}
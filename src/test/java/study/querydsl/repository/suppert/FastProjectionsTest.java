@@ -0,0 +1,111 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class FastProjectionsTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory=new JPAQueryFactory(em);
+        Team teamA=new Team("projectionTeam");
+        em.persist(teamA);
+        em.persist(new Member("projection1",10,teamA));
+        em.persist(new Member("projection2",20,teamA));
+        em.persist(new Member(null,30,teamA));
+    }
+
+    @Test
+    public void sameAsProjections() throws Exception{
+
+        Assertions.assertThat(fetch(FastProjections.bean(MemberDto.class, member.username, member.age)))
+                .isEqualTo(fetch(Projections.bean(MemberDto.class, member.username, member.age)));
+        Assertions.assertThat(fetch(FastProjections.fields(MemberDto.class, member.username, member.age)))
+                .isEqualTo(fetch(Projections.fields(MemberDto.class, member.username, member.age)));
+        Assertions.assertThat(fetch(FastProjections.constructor(MemberDto.class, member.username, member.age)))
+                .isEqualTo(fetch(Projections.constructor(MemberDto.class, member.username, member.age)))
+                .extracting("username").containsExactly("projection1", "projection2", null);
+    }
+
+    @Test
+    public void alias() throws Exception{
+
+        QMember memberSub = new QMember("memberSub");
+        List<UserDto> result = queryFactory
+                .select(FastProjections.fields(UserDto.class,
+                        member.username.as("name"),
+                        ExpressionUtils.as(JPAExpressions
+                                .select(memberSub.age.max())
+                                .from(memberSub), "age")))
+                .from(member)
+                .where(member.username.startsWith("projection"))
+                .orderBy(member.id.asc())
+                .fetch();
+
+        Assertions.assertThat(result).extracting("name").containsExactly("projection1", "projection2");
+        Assertions.assertThat(result).extracting("age").doesNotContain(0);
+
+        List<UserDto> bean = queryFactory
+                .select(FastProjections.bean(UserDto.class, member.username.as("name"), member.age))
+                .from(member)
+                .where(member.username.eq("projection2"))
+                .fetch();
+        Assertions.assertThat(bean).extracting("name", "age")
+                .containsExactly(Assertions.tuple("projection2", 20));
+    }
+
+    @Test
+    public void cachePerClass() throws Exception{
+
+        //접근자는 DTO 클래스마다 한번만 만든다
+        Assertions.assertThat(DtoAccessors.of(MemberDto.class)).isSameAs(DtoAccessors.of(MemberDto.class));
+        Assertions.assertThat(DtoAccessors.of(MemberDto.class).setter("age"))
+                .isSameAs(DtoAccessors.of(MemberDto.class).setter("age"));
+    }
+
+    @Test
+    public void unknownProperty() throws Exception{
+
+        //Projections 와 달리 쿼리 실행 전에 바로 알려준다
+        Assertions.assertThatThrownBy(() -> FastProjections.bean(UserDto.class, member.username, member.age))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("username");
+        Assertions.assertThatThrownBy(() -> FastProjections.constructor(UserDto.class, member.username, member.age))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private <T> List<T> fetch(FactoryExpression<T> projection) {
+        return queryFactory
+                .select(projection)
+                .from(member)
+                .where(member.team.name.eq("projectionTeam"))
+                .orderBy(member.age.asc())
+                .fetch();
+    }
+}
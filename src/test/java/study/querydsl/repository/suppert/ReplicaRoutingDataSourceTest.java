@@ -0,0 +1,115 @@
+package study.querydsl.repository.suppert;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+//메모리 H2 두개를 primary, replica 로 두고 어느 쪽에서 쿼리가 실행됐는지 DB 이름으로 확인한다
+class ReplicaRoutingDataSourceTest {
+
+    ReplicaRoutingDataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate readWrite;
+    TransactionTemplate readOnly;
+
+    private void setUp(Duration maxLag) {
+        dataSource = new ReplicaRoutingDataSource(
+                new DriverManagerDataSource("jdbc:h2:mem:routingPrimary;DB_CLOSE_DELAY=-1", "sa", ""),
+                new DriverManagerDataSource("jdbc:h2:mem:routingReplica;DB_CLOSE_DELAY=-1", "sa", ""),
+                maxLag);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        ClientWriteMarker.clear();
+        dataSource.close();
+    }
+
+    @Test
+    public void routeByReadOnly() throws Exception{
+        setUp(Duration.ZERO);
+
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGREPLICA");
+        Assertions.assertThat(readWriteDatabaseName()).isEqualTo("ROUTINGPRIMARY");
+        //트랜잭션 밖은 primary
+        Assertions.assertThat(databaseName()).isEqualTo("ROUTINGPRIMARY");
+    }
+
+    @Test
+    public void readYourWritesWithinMaxLag() throws Exception{
+        setUp(Duration.ofMinutes(1));
+        long[] cookie = new long[1];
+        ClientWriteMarker.bind(0, written -> cookie[0] = written);
+
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGREPLICA");
+
+        readWrite.executeWithoutResult(status -> databaseName());
+
+        //쓰기 커밋 직후의 읽기는 replica 가 따라오지 못했을 수 있으므로 primary
+        Assertions.assertThat(cookie[0]).isPositive();
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGPRIMARY");
+
+        //같은 스레드라도 다음 요청이 다른 클라이언트면 replica
+        ClientWriteMarker.bind(0, written -> { });
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGREPLICA");
+
+        //쓴 클라이언트의 다음 요청은 다른 스레드에서도 돌려받은 값으로 primary
+        String[] nextRequest = new String[1];
+        Thread thread = new Thread(() -> {
+            ClientWriteMarker.bind(cookie[0], written -> { });
+            try {
+                nextRequest[0] = readOnlyDatabaseName();
+            } finally {
+                ClientWriteMarker.clear();
+            }
+        });
+        thread.start();
+        thread.join();
+        Assertions.assertThat(nextRequest[0]).isEqualTo("ROUTINGPRIMARY");
+    }
+
+    @Test
+    public void noGuaranteeOutsideRequest() throws Exception{
+        setUp(Duration.ofMinutes(1));
+
+        readWrite.executeWithoutResult(status -> databaseName());
+
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGREPLICA");
+    }
+
+    @Test
+    public void rolledBackWriteDoesNotPinPrimary() throws Exception{
+        setUp(Duration.ofMinutes(1));
+        ClientWriteMarker.bind(0, written -> { });
+
+        readWrite.executeWithoutResult(status -> {
+            databaseName();
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertThat(readOnlyDatabaseName()).isEqualTo("ROUTINGREPLICA");
+    }
+
+    private String readOnlyDatabaseName() {
+        return readOnly.execute(status -> databaseName());
+    }
+
+    private String readWriteDatabaseName() {
+        return readWrite.execute(status -> databaseName());
+    }
+
+    private String databaseName() {
+        return jdbcTemplate.queryForObject("select database()", String.class);
+    }
+}
@@ -0,0 +1,129 @@
+package study.querydsl.repository.suppert;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    List<SingleFlight.Role> roles = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void after(){
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void shareResultWithWaiters() throws Exception{
+
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch leaderRunning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> {
+            executions.incrementAndGet();
+            leaderRunning.countDown();
+            release.await();
+            return "result";
+        }));
+        Assertions.assertThat(leaderRunning.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Future<String> waiter1 = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> "other" + executions.incrementAndGet()));
+        Future<String> waiter2 = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> "other" + executions.incrementAndGet()));
+        //다른 키는 기다리지 않는다
+        Assertions.assertThat(execute("page1", Duration.ofSeconds(5), () -> "page1")).isEqualTo("page1");
+        waitForWaiters(2);
+
+        release.countDown();
+        Assertions.assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        Assertions.assertThat(waiter1.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        Assertions.assertThat(waiter2.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        Assertions.assertThat(executions.get()).isEqualTo(1);
+        Assertions.assertThat(roles).containsExactlyInAnyOrder(SingleFlight.Role.LEADER, SingleFlight.Role.LEADER,
+                SingleFlight.Role.COALESCED, SingleFlight.Role.COALESCED);
+        Assertions.assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    public void runItselfAfterMaxWait() throws Exception{
+
+        CountDownLatch leaderRunning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> {
+            leaderRunning.countDown();
+            release.await();
+            return "leader";
+        }));
+        Assertions.assertThat(leaderRunning.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Assertions.assertThat(execute("page0", Duration.ofMillis(20), () -> "self")).isEqualTo("self");
+        Assertions.assertThat(roles).contains(SingleFlight.Role.TIMEOUT);
+
+        release.countDown();
+        Assertions.assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("leader");
+    }
+
+    @Test
+    public void shareFailure() throws Exception{
+
+        CountDownLatch leaderRunning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> {
+            leaderRunning.countDown();
+            release.await();
+            throw new IllegalStateException("db down");
+        }));
+        Assertions.assertThat(leaderRunning.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> waiter = callers.submit(() -> execute("page0", Duration.ofSeconds(5), () -> "other"));
+        waitForWaiters(1);
+
+        release.countDown();
+        Assertions.assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("db down");
+        Assertions.assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("db down");
+
+        //끝난 호출은 캐시하지 않는다
+        Assertions.assertThat(execute("page0", Duration.ofSeconds(5), () -> "retry")).isEqualTo("retry");
+    }
+
+    private String execute(String key, Duration maxWait, SingleFlight.Call<String> call) throws Exception {
+        try {
+            return singleFlight.execute(key, maxWait, call, roles::add);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //기다리는 호출이 leader 의 future 를 잡을 때까지 (역할은 결과를 받은 뒤에 기록되므로 스레드 상태로 확인)
+    private void waitForWaiters(int waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && waitingThreads() < waiters) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static long waitingThreads() {
+        return Thread.getAllStackTraces().entrySet().stream()
+                .filter(entry -> entry.getKey().getState() == Thread.State.TIMED_WAITING)
+                .filter(entry -> java.util.Arrays.stream(entry.getValue())
+                        .anyMatch(frame -> frame.getClassName().equals(CompletableFutureName.NAME) && frame.getMethodName().equals("get")))
+                .count();
+    }
+
+    private static final class CompletableFutureName {
+        private static final String NAME = java.util.concurrent.CompletableFuture.class.getName();
+    }
+}
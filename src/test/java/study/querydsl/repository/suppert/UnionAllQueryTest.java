@@ -0,0 +1,92 @@
+package study.querydsl.repository.suppert;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class UnionAllQueryTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory=new JPAQueryFactory(em);
+        Team team=new Team("unionTeam");
+        em.persist(team);
+        em.persist(new Member("union?1",10,team));
+        em.persist(new Member("union2",20,team));
+        em.persist(new Member("union3",30,team));
+        em.flush();
+    }
+
+    @Test
+    public void questionMarkInLiteral() throws Exception{
+
+        //문자열 리터럴 안의 ? 와 ?1 은 파라미터가 아니다
+        JPAQuery<String> literal = queryFactory
+                .select(member.username)
+                .from(member)
+                .where(member.username.eq(Expressions.stringTemplate("'union?1'")),
+                        member.age.goe(10));
+        JPAQuery<String> params = queryFactory
+                .select(member.username)
+                .from(member)
+                .where(member.username.ne(Expressions.stringTemplate("'what?'")),
+                        member.username.in("union2", "union3"),
+                        member.age.loe(20));
+
+        List<List<String>> results = UnionAllQuery.fetch(em, Arrays.asList(literal, params));
+
+        Assertions.assertThat(results.get(0)).containsExactly("union?1");
+        Assertions.assertThat(results.get(1)).containsExactly("union2");
+    }
+
+    @Test
+    public void sameParameterTwice() throws Exception{
+
+        //같은 값은 JPQL 에서 ?1 하나로 나오고 SQL 에서는 ? 두개가 된다
+        JPAQuery<String> twice = queryFactory
+                .select(member.username)
+                .from(member)
+                .where(member.age.goe(20),
+                        member.age.loe(30),
+                        member.age.ne(20).or(member.username.eq("union2")));
+        JPAQuery<String> other = queryFactory
+                .select(member.username)
+                .from(member)
+                .where(member.age.eq(10));
+
+        List<List<String>> results = UnionAllQuery.fetch(em, Arrays.asList(twice, other));
+
+        Assertions.assertThat(results.get(0)).containsExactlyInAnyOrder("union2", "union3");
+        Assertions.assertThat(results.get(1)).containsExactly("union?1");
+    }
+
+    @Test
+    public void placeholders() throws Exception{
+
+        String sql = "select 'a?''b?', \"c?\" /* d? */ from t where x=? -- e?\n and y = ?";
+
+        Assertions.assertThat(UnionAllQuery.placeholdersOf(sql))
+                .containsExactly(sql.indexOf("x=?") + 2, sql.lastIndexOf('?'));
+    }
+}